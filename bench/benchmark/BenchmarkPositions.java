@@ -0,0 +1,47 @@
+package benchmark;
+
+/**
+ * Fixed set of positions used by every benchmark so results can be compared between runs.
+ * The perft positions are from https://www.chessprogramming.org/Perft_Results
+ *
+ * @author Graham Young
+ *
+ */
+public class BenchmarkPositions {
+
+	public static final String START_POS = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	public static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+	public static final String PERFT_POS_3 = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+	public static final String PERFT_POS_4 = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+	public static final String PERFT_POS_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+	public static final String PERFT_POS_6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+	public static final String MIDDLEGAME = "r1bq1rk1/pp2bppp/2n1pn2/2pp4/2PP4/2N1PN2/PP2BPPP/R1BQ1RK1 w - - 0 8";
+	public static final String ENDGAME = "8/5pk1/6p1/3R4/5P2/5KP1/r7/8 b - - 0 45";
+
+	/**
+	 * @param name one of the names used in the benchmarks' @Param lists
+	 * @return the fen of the position
+	 */
+	public static String fen(String name) {
+		switch (name) {
+		case "startpos":
+			return START_POS;
+		case "kiwipete":
+			return KIWIPETE;
+		case "perft3":
+			return PERFT_POS_3;
+		case "perft4":
+			return PERFT_POS_4;
+		case "perft5":
+			return PERFT_POS_5;
+		case "perft6":
+			return PERFT_POS_6;
+		case "middlegame":
+			return MIDDLEGAME;
+		case "endgame":
+			return ENDGAME;
+		default:
+			throw new IllegalArgumentException("Unknown benchmark position " + name);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.FenUtility;
+import chess_ai.ai_board.LoadedPositionInfo;
+import chess_ai.ai_board.MoveGenerator;
+
+/**
+ * Benchmarks of the board level operations the search spends most of its time in:
+ * move generation, make/unmake, evaluation and loading positions from a fen.
+ *
+ * @author Graham Young
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class MoveGenerationBenchmark {
+
+	@Param({"startpos", "kiwipete", "perft3", "perft4", "perft5", "perft6", "middlegame", "endgame"})
+	public String position;
+
+	AIBoard board;
+	MoveGenerator moveGenerator;
+	int[] moves;
+	int numMoves;
+	// separate from moves so generating doesn't overwrite the moves used by makeUnmakeMoves
+	int[] generateBuffer;
+	String fen;
+
+	@Setup
+	public void setup() {
+		fen = BenchmarkPositions.fen(position);
+		board = new AIBoard();
+		board.LoadPosition(fen);
+		moveGenerator = new MoveGenerator();
+		moves = new int[MoveGenerator.MaxMoves];
+		numMoves = moveGenerator.generateMoves(board, moves);
+		generateBuffer = new int[MoveGenerator.MaxMoves];
+	}
+
+	@Benchmark
+	public int generateAllMoves() {
+		return moveGenerator.generateMoves(board, generateBuffer, true);
+	}
+
+	@Benchmark
+	public int generateCaptures() {
+		return moveGenerator.generateMoves(board, generateBuffer, false);
+	}
+
+	/**
+	 * plays and takes back every legal move of the position
+	 */
+	@Benchmark
+	public long makeUnmakeMoves() {
+		long keys = 0;
+		for (int i = 0; i < numMoves; i++) {
+			board.MakeMove(moves[i], true);
+			keys ^= board.ZobristKey;
+			board.UnmakeMove(moves[i], true);
+		}
+		return keys;
+	}
+
+	@Benchmark
+	public int evaluate() {
+		return board.evaluate();
+	}
+
+	@Benchmark
+	public LoadedPositionInfo positionFromFen() {
+		return FenUtility.PositionFromFen(fen);
+	}
+}
@@ -0,0 +1,76 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chess_ai.ChessAI;
+import chess_ai.SearchLimits;
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.Move;
+
+/**
+ * Benchmark of a fixed depth search. The transposition table is cleared before every search so each
+ * one does the same work. Run with -p threads=1,2,4... to measure how the multi-threaded search scales.
+ *
+ * @author Graham Young
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SearchBenchmark {
+
+	@Param({"startpos", "kiwipete", "perft3", "perft4", "perft5", "perft6", "middlegame", "endgame"})
+	public String position;
+
+	@Param({"5"})
+	public int depth;
+
+	@Param({"1"})
+	public int threads;
+
+	ChessAI ai;
+	AIBoard board;
+	SearchLimits limits;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		ai = new ChessAI(true, 16, threads);
+		// don't print every iteration
+		ai.setSearchListener((depth, eval, nodes, time, bestMove, principalVariation) -> {});
+		board = new AIBoard();
+		board.LoadPosition(BenchmarkPositions.fen(position));
+		limits = SearchLimits.depth(depth);
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTranspositionTable() {
+		ai.newGame();
+	}
+
+	@Benchmark
+	public Move search() {
+		return ai.getBestMove(board, limits);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdownHelpers() {
+		ai.setThreads(1);
+	}
+}
@@ -3,9 +3,14 @@ package chess_ai;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import chess.GameController;
 import chess_ai.ai_board.AIBoard;
@@ -26,18 +31,264 @@ public class ChessAI {
 	
 	private final int POSITIVE_INFINITY = 999999999;
 	private final int NEGATIVE_INFINITY = -POSITIVE_INFINITY;
+	// Score of being checkmated at the root. Mate at ply n scores -(MATE_SCORE - n), so a faster mate scores higher,
+	// and every score at least MATE_SCORE - MAX_PLY from 0 is a mate (see isMateScore).
+	public static final int MATE_SCORE = 1000000;
+
+	// Deepest ply the search (including the capture search) can reach
+	static final int MAX_PLY = 128;
+	// Remaining depth needed to try a null move
+	static final int nullMoveMinDepth = 3;
+	
+	// History scores stay within +-maxHistory, a cutoff moves them a fraction of the remaining distance
+	static final int maxHistory = 16384;
+	
+	// Late move reductions: quiet moves late in the move ordering are searched with less depth.
+	// lateMoveReductions[depth][moveIndex] = lmrBase + ln(depth) * ln(moveIndex) / lmrDivisor plies
+	static final double lmrBase = 0.75;
+	static final double lmrDivisor = 2.25;
+	static final int lmrMinDepth = 3;
+	static final int lmrMinMoveIndex = 3;
+	static final int[][] lateMoveReductions = new int[MAX_PLY][MoveGenerator.MaxMoves];
+	// Reverse futility pruning: a node this close to the leaves fails high if the static evaluation
+	// is reverseFutilityMargin per ply of depth above beta
+	static final int reverseFutilityMaxDepth = 3;
+	static final int reverseFutilityMargin = 120;
+	// Futility pruning: quiet moves are skipped if the static evaluation plus the margin for the
+	// remaining depth can't reach alpha, indexed by depth
+	static final int[] futilityMargins = { 0, 150, 300 };
+	// Delta pruning: margin added to the value of the captured piece in the capture search
+	static final int deltaMargin = 200;
+	// Aspiration windows: from aspirationMinDepth the root is searched with a window of aspirationWindow either
+	// side of the previous iteration's score. The window doubles on the failing side every time the score falls
+	// outside it, past aspirationMaxWindow that side is opened completely.
+	static final int aspirationMinDepth = 4;
+	static final int aspirationWindow = 50;
+	static final int aspirationMaxWindow = 500;
+	
+	static {
+		for (int depth = 1; depth < MAX_PLY; depth++) {
+			for (int moveIndex = 1; moveIndex < MoveGenerator.MaxMoves; moveIndex++) {
+				lateMoveReductions[depth][moveIndex] = (int) (lmrBase + Math.log(depth) * Math.log(moveIndex) / lmrDivisor);
+			}
+		}
+	}
 
 	private AIBoard board;
-	private MoveGenerator moveGenerator = new MoveGenerator();
+	// Triangular principal variation table: pvTable[ply] holds the best line found from that ply,
+	// pvLength[ply] its length. A node that raises alpha copies its child's line behind its own move.
+	private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+	private final int[] pvLength = new int[MAX_PLY];
+	// principal variation of the last completed iteration
+	private int[] principalVariation = new int[0];
+	
+	// Quiet move ordering. Killer moves are the last two quiet moves that caused a beta cutoff at each ply,
+	// history is indexed [colourIndex][from][to] and grows for quiet moves that cause cutoffs and shrinks for
+	// the quiet moves searched before them, counterMoves holds the quiet move that refuted the previous move,
+	// indexed by that move's [from][to]. searchMoves is the move made at each ply of the current line.
+	private final int[][] killerMoves = new int[MAX_PLY][2];
+	private final int[][][] history = new int[2][64][64];
+	private final int[][] counterMoves = new int[64][64];
+	private final int[] searchMoves = new int[MAX_PLY];
+	// Preallocated move pickers and lists of the quiet moves searched for every ply so the search doesn't allocate
+	private final MovePicker[] movePickers = new MovePicker[MAX_PLY];
+	private final int[][] quietsSearchedBuffers = new int[MAX_PLY][MoveGenerator.MaxMoves];
+	{
+		for (int ply = 0; ply < MAX_PLY; ply++) {
+			movePickers[ply] = new MovePicker(killerMoves, history, counterMoves);
+		}
+	}
+	private TranspositionTable transpositionTable;
+	// static evaluations of positions reached by the capture search, shared with the helpers like the transposition table
+	private EvaluationCache evaluationCache;
 	
+	long numNodes;
+	long numTranspositions;
+	// evaluation cache probes and hits, counted per thread so the shared cache doesn't have contended counters
+	long numEvaluationCacheProbes;
+	long numEvaluationCacheHits;
+	// root searches with an aspiration window and how many of them fell outside it and were searched again
+	long numAspirationSearches;
+	long numAspirationFailLows;
+	long numAspirationFailHighs;
 
 	Move bestMoveThisIteration = Move.getInvalidMove();
 	int bestEvalThisIteration = 0;
+	Move bestMove = Move.getInvalidMove();
+	int bestEval = 0;
+	
+	// search limits, times in milliseconds
+	static final int checkLimitsInterval = 2047;
+	long searchStartTime;
+	long softTimeLimit;
+	long hardTimeLimit;
+	long nodeLimit;
+	volatile boolean abortSearch;
+	
+	// Lazy SMP: helper searches running on other threads, each with its own board and move generator,
+	// search the same position and share the transposition table. The main search reports the result.
+	private int numThreads = 1;
+	private ChessAI[] helpers = new ChessAI[0];
+	private Future<?>[] helperResults = new Future<?>[0];
+	private ExecutorService helperThreads;
+	// 0 for the main search, 1... for helpers
+	private int helperIndex;
 	
 	boolean isWhite;
 	
+	/**
+	 * receives a report after every completed iteration of the search. It is called on the search thread
+	 * between iterations, so the statistics getters (getNumTranspositions, getPawnHashHitRate,
+	 * getEvaluationCacheHitRate, getAspirationReSearchRate...) can be read from it as well.
+	 */
+	public interface SearchListener {
+		/**
+		 * @param depth depth of the completed iteration
+		 * @param eval score of the best move from the perspective of the side to move
+		 * @param nodes nodes searched so far on all threads
+		 * @param time milliseconds since the search started
+		 * @param bestMove best move found by the iteration
+		 * @param principalVariation the line the search expects to be played, starting with bestMove (16 bit move values)
+		 */
+		void iterationComplete(int depth, int eval, long nodes, long time, Move bestMove, int[] principalVariation);
+	}
+	
+	// null if nothing is listening, the search itself doesn't print the iterations
+	private SearchListener searchListener;
+	
 	public ChessAI(boolean isWhite) {
+		this(isWhite, TranspositionTable.DEFAULT_SIZE_MB);
+	}
+	
+	/**
+	 * @param isWhite the colour the AI plays
+	 * @param transpositionTableSizeMB size of the transposition table in megabytes
+	 */
+	public ChessAI(boolean isWhite, int transpositionTableSizeMB) {
 		this.isWhite = isWhite;
+		this.transpositionTable = new TranspositionTable(transpositionTableSizeMB);
+		this.evaluationCache = new EvaluationCache();
+	}
+	
+	/**
+	 * @param isWhite the colour the AI plays
+	 * @param transpositionTableSizeMB size of the transposition table in megabytes
+	 * @param numThreads number of threads to search with
+	 */
+	public ChessAI(boolean isWhite, int transpositionTableSizeMB, int numThreads) {
+		this(isWhite, transpositionTableSizeMB);
+		setThreads(numThreads);
+	}
+	
+	// helper search sharing the main search's transposition table and evaluation cache
+	private ChessAI(ChessAI mainSearch, int helperIndex) {
+		this.transpositionTable = mainSearch.transpositionTable;
+		this.evaluationCache = mainSearch.evaluationCache;
+		this.helperIndex = helperIndex;
+	}
+	
+	/**
+	 * replaces the evaluation cache with an empty one of the given size
+	 * @param sizeMB
+	 */
+	public void setEvaluationCacheSize(int sizeMB) {
+		evaluationCache = new EvaluationCache(sizeMB);
+		for (ChessAI helper : helpers) {
+			helper.evaluationCache = evaluationCache;
+		}
+	}
+	
+	public EvaluationCache getEvaluationCache() {
+		return evaluationCache;
+	}
+	
+	public TranspositionTable getTranspositionTable() {
+		return transpositionTable;
+	}
+	
+	/**
+	 * @return pawn hash table hits per probe in percent on the board of the main search thread
+	 */
+	public double getPawnHashHitRate() {
+		return (board == null) ? 0 : board.GetPawnHashTable().HitRate();
+	}
+	
+	/**
+	 * sets the number of threads used by the next search, the threads are kept between searches
+	 * @param numThreads
+	 */
+	public void setThreads(int numThreads) {
+		numThreads = Math.max(1, numThreads);
+		if (numThreads == this.numThreads) {
+			return;
+		}
+		if (helperThreads != null) {
+			helperThreads.shutdownNow();
+			helperThreads = null;
+		}
+		this.numThreads = numThreads;
+		helpers = new ChessAI[numThreads - 1];
+		helperResults = new Future<?>[numThreads - 1];
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i] = new ChessAI(this, i + 1);
+		}
+		if (helpers.length > 0) {
+			helperThreads = Executors.newFixedThreadPool(helpers.length, runnable -> {
+				Thread thread = new Thread(runnable, "ChessAI helper");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+	public int getThreads() {
+		return numThreads;
+	}
+	
+	/**
+	 * @return the percentage of aspiration window root searches in the last search that had to be searched again
+	 */
+	public double getAspirationReSearchRate() {
+		return (numAspirationSearches == 0) ? 0 : 100.0 * (numAspirationFailLows + numAspirationFailHighs) / numAspirationSearches;
+	}
+	
+	public long getNumAspirationFailLows() {
+		return numAspirationFailLows;
+	}
+	
+	public long getNumAspirationFailHighs() {
+		return numAspirationFailHighs;
+	}
+	
+	/**
+	 * @return the number of transposition table cutoffs of the last search on the main thread
+	 */
+	public long getNumTranspositions() {
+		return numTranspositions;
+	}
+	
+	/**
+	 * @return evaluation cache hits per probe in percent in the last search on all threads
+	 */
+	public double getEvaluationCacheHitRate() {
+		long probes = numEvaluationCacheProbes;
+		long hits = numEvaluationCacheHits;
+		for (ChessAI helper : helpers) {
+			probes += helper.numEvaluationCacheProbes;
+			hits += helper.numEvaluationCacheHits;
+		}
+		return (probes == 0) ? 0 : 100.0 * hits / probes;
+	}
+	
+	/**
+	 * @return the number of nodes searched by the last search on all threads
+	 */
+	public long getNodesSearched() {
+		long nodes = numNodes;
+		for (ChessAI helper : helpers) {
+			nodes += helper.numNodes;
+		}
+		return nodes;
 	}
 	
 	
@@ -45,10 +296,22 @@ public class ChessAI {
 	 * getNextMove: gets a boardFEN creates a new board from the fen and calls the search algorithm
 	 * on that new board (the new board is to avoid messing with the display board)
 	 * @param boardFEN 
+	 * @param depth the maximum depth to search to
 	 * @return the best move that the search found
 	 * 
 	 */
 	public chessboard.Move getNextMove(String boardFEN, int depth) {
+		return getNextMove(boardFEN, SearchLimits.depth(depth));
+	}
+	
+	/**
+	 * getNextMove: same as getNextMove(String, int) but the search stops when any of the
+	 * given depth, time or node limits is reached
+	 * @param boardFEN
+	 * @param limits
+	 * @return the best move that the search found
+	 */
+	public chessboard.Move getNextMove(String boardFEN, SearchLimits limits) {
 		//make a chess board
 		board = new AIBoard();
 		board.LoadPosition(boardFEN);
@@ -56,8 +319,7 @@ public class ChessAI {
 			return null;
 		}
 		
-		int eval = search(depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 0);
-		Move bestMove = bestMoveThisIteration;
+		Move bestMove = iterativeDeepeningSearch(limits);
 		
 		System.out.println(bestMove);
 		chessboard.Move move = bestMove.getChessBoardMove();
@@ -65,6 +327,297 @@ public class ChessAI {
 		return move; 
 	}
 	
+	/**
+	 * getBestMove: searches the given board directly instead of a board loaded from a fen.
+	 * The board is left in the same position once the search returns.
+	 * @param board the position to search, it must not be changed while the search runs
+	 * @param limits
+	 * @return the best move that the search found
+	 */
+	public Move getBestMove(AIBoard board, SearchLimits limits) {
+		this.board = board;
+		return iterativeDeepeningSearch(limits);
+	}
+	
+	/**
+	 * @return the principal variation of the last completed iteration as 16 bit move values
+	 */
+	public int[] getPrincipalVariation() {
+		return principalVariation.clone();
+	}
+	
+	static String principalVariationString(int[] principalVariation) {
+		StringBuilder line = new StringBuilder();
+		for (int move : principalVariation) {
+			if (line.length() > 0) {
+				line.append(' ');
+			}
+			line.append(UCI.moveToString(move));
+		}
+		return line.toString();
+	}
+	
+	public void setSearchListener(SearchListener searchListener) {
+		this.searchListener = searchListener;
+	}
+	
+	/**
+	 * forgets everything learned from earlier searches, call this before searching a position from a different game
+	 */
+	public void newGame() {
+		transpositionTable.clear();
+		evaluationCache.clear();
+		clearMoveOrdering();
+		for (ChessAI helper : helpers) {
+			helper.clearMoveOrdering();
+		}
+	}
+	
+	private void clearMoveOrdering() {
+		for (int[][] colourHistory : history) {
+			for (int[] fromHistory : colourHistory) {
+				Arrays.fill(fromHistory, 0);
+			}
+		}
+		for (int[] fromCounterMoves : counterMoves) {
+			Arrays.fill(fromCounterMoves, Move.InvalidMoveValue);
+		}
+	}
+	
+	/**
+	 * stops a search running on another thread, the best move from the last completed
+	 * iteration is returned
+	 */
+	public void stopSearch() {
+		abortSearch = true;
+	}
+	
+	/**
+	 * iterativeDeepeningSearch searches depth 1, 2, 3... until the depth limit is reached or the time or
+	 * node budget runs out. Each iteration stores its best move in the transposition table so the next
+	 * iteration searches it first, which makes the shallow iterations almost free.
+	 * @param limits
+	 * @return the best move of the last completed iteration
+	 */
+	private Move iterativeDeepeningSearch(SearchLimits limits) {
+		numNodes = 0;
+		numTranspositions = 0;
+		numEvaluationCacheProbes = 0;
+		numEvaluationCacheHits = 0;
+		numAspirationSearches = 0;
+		numAspirationFailLows = 0;
+		numAspirationFailHighs = 0;
+		abortSearch = false;
+		transpositionTable.newSearch();
+		
+		searchStartTime = System.currentTimeMillis();
+		softTimeLimit = limits.softTimeLimit(board.WhiteToMove);
+		hardTimeLimit = limits.hardTimeLimit(board.WhiteToMove);
+		nodeLimit = limits.nodes;
+		
+		bestMove = Move.getInvalidMove();
+		bestEval = 0;
+		principalVariation = new int[0];
+		prepareMoveOrdering();
+		
+		startHelpers();
+		try {
+			iterativeDeepeningLoop(limits);
+		} finally {
+			stopHelpers();
+		}
+		return bestMove;
+	}
+	
+	private void iterativeDeepeningLoop(SearchLimits limits) {
+		for (int depth = 1; depth <= limits.maxDepth(); depth++) {
+			bestMoveThisIteration = Move.getInvalidMove();
+			bestEvalThisIteration = aspirationSearch(depth);
+			
+			if (abortSearch) {
+				// keep the partial result only if no iteration has completed yet
+				if (bestMove.isInvalid()) {
+					bestMove = bestMoveThisIteration;
+					principalVariation = new int[] { bestMove.getValue() };
+				}
+				break;
+			}
+			bestMove = bestMoveThisIteration;
+			bestEval = bestEvalThisIteration;
+			principalVariation = Arrays.copyOf(pvTable[0], pvLength[0]);
+			if (principalVariation.length == 0 || principalVariation[0] != bestMove.getValue()) {
+				// the root failed high, only the move is known
+				principalVariation = new int[] { bestMove.getValue() };
+			}
+			long elapsed = System.currentTimeMillis() - searchStartTime;
+			if (searchListener != null) {
+				searchListener.iterationComplete(depth, bestEval, getNodesSearched(), elapsed, bestMove, principalVariation.clone());
+			}
+			
+			// not enough time left to expect the next iteration to finish
+			if (softTimeLimit > 0 && elapsed >= softTimeLimit) {
+				break;
+			}
+			// a mate within the depth searched is proven, deeper iterations won't change the result
+			// (an infinite search carries on until it is stopped)
+			if (!limits.infinite && isMateScore(bestEval) && MATE_SCORE - Math.abs(bestEval) <= depth) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * searches the root with a narrow window around the score of the previous iteration, which gives
+	 * many more cutoffs than the full window. If the score falls outside the window it is widened on
+	 * that side and the root is searched again.
+	 * @return the score of the root, exact unless the search was aborted
+	 */
+	private int aspirationSearch(int depth) {
+		if (depth < aspirationMinDepth || isMateScore(bestEval)) {
+			return search(depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 0, true);
+		}
+		int lowerWindow = aspirationWindow;
+		int upperWindow = aspirationWindow;
+		while (true) {
+			int alpha = (lowerWindow > aspirationMaxWindow) ? NEGATIVE_INFINITY : bestEval - lowerWindow;
+			int beta = (upperWindow > aspirationMaxWindow) ? POSITIVE_INFINITY : bestEval + upperWindow;
+			numAspirationSearches++;
+			int eval = search(depth, alpha, beta, 0, true);
+			if (abortSearch) {
+				return eval;
+			}
+			if (eval <= alpha && alpha != NEGATIVE_INFINITY) {
+				numAspirationFailLows++;
+				lowerWindow *= 2;
+			} else if (eval >= beta && beta != POSITIVE_INFINITY) {
+				numAspirationFailHighs++;
+				upperWindow *= 2;
+			} else {
+				return eval;
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the score is a forced mate for either side
+	 */
+	public static boolean isMateScore(int score) {
+		return Math.abs(score) >= MATE_SCORE - MAX_PLY;
+	}
+	
+	/**
+	 * @return the number of moves (not plies) to the mate of a mate score, negative if the side to move gets mated
+	 */
+	public static int mateInMoves(int score) {
+		int plies = MATE_SCORE - Math.abs(score);
+		return (score > 0) ? (plies + 1) / 2 : -(plies + 1) / 2;
+	}
+	
+	/**
+	 * Mate scores count plies from the root, the transposition table stores them counted from the position
+	 * instead so they are still right when the position is reached at a different ply
+	 */
+	static int scoreToTranspositionTable(int score, int plyFromRoot) {
+		if (score >= MATE_SCORE - MAX_PLY) {
+			return score + plyFromRoot;
+		}
+		if (score <= -(MATE_SCORE - MAX_PLY)) {
+			return score - plyFromRoot;
+		}
+		return score;
+	}
+	
+	static int scoreFromTranspositionTable(int score, int plyFromRoot) {
+		if (score >= MATE_SCORE - MAX_PLY) {
+			return score - plyFromRoot;
+		}
+		if (score <= -(MATE_SCORE - MAX_PLY)) {
+			return score + plyFromRoot;
+		}
+		return score;
+	}
+	
+	/**
+	 * starts every helper searching a copy of the current board
+	 */
+	private void startHelpers() {
+		for (int i = 0; i < helpers.length; i++) {
+			ChessAI helper = helpers[i];
+			helper.board = new AIBoard(board);
+			helper.numNodes = 0;
+			helper.numTranspositions = 0;
+			helper.numEvaluationCacheProbes = 0;
+			helper.numEvaluationCacheHits = 0;
+			helper.abortSearch = false;
+			helperResults[i] = helperThreads.submit(helper::helperSearch);
+		}
+	}
+	
+	/**
+	 * stops the helpers and waits for them to finish so the next search can't overlap with them
+	 */
+	private void stopHelpers() {
+		for (ChessAI helper : helpers) {
+			helper.abortSearch = true;
+		}
+		for (int i = 0; i < helpers.length; i++) {
+			try {
+				helperResults[i].get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("helper search failed", e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 * search run by a helper thread until the main search stops it. Every other helper starts one ply
+	 * deeper so the threads don't all search the same depth at the same time, the results they store
+	 * in the shared transposition table then let the main search skip work.
+	 */
+	private void helperSearch() {
+		nodeLimit = 0;
+		hardTimeLimit = 0;
+		prepareMoveOrdering();
+		for (int depth = 1 + (helperIndex & 1); depth <= SearchLimits.MAX_DEPTH && !abortSearch; depth++) {
+			search(depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 0, true);
+		}
+	}
+	
+	/**
+	 * clears the killer moves, which belong to the plies of the last search, and halves the history
+	 * so it favours what worked in the new position
+	 */
+	private void prepareMoveOrdering() {
+		for (int[] plyKillers : killerMoves) {
+			plyKillers[0] = Move.InvalidMoveValue;
+			plyKillers[1] = Move.InvalidMoveValue;
+		}
+		for (int[][] colourHistory : history) {
+			for (int[] fromHistory : colourHistory) {
+				for (int to = 0; to < 64; to++) {
+					fromHistory[to] /= 2;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * checks the time and node limits every checkLimitsInterval nodes, reading the clock at every node
+	 * would be a noticeable part of the search time
+	 */
+	private void checkLimits() {
+		if ((numNodes & checkLimitsInterval) != 0) {
+			return;
+		}
+		if (nodeLimit > 0 && getNodesSearched() >= nodeLimit) {
+			abortSearch = true;
+		} else if (hardTimeLimit > 0 && System.currentTimeMillis() - searchStartTime >= hardTimeLimit) {
+			abortSearch = true;
+		}
+	}
+	
 	protected int getRandomInRange (int min, int max) {
 		if(max == 0 && min == 0) {
 			return 0;
@@ -77,178 +630,330 @@ public class ChessAI {
 
 
 	/**
-	 * alpha beta pruning minimax search.
+	 * alpha beta pruning minimax search using principal variation search: the first move (the best
+	 * according to move ordering) is searched with the full window, every other move first with a
+	 * null window that only proves it is no better than alpha. Only if that fails is the move
+	 * searched again with the full window.
+	 * 
+	 * Before searching the moves of a null window node the opponent is given a free move (null move pruning).
+	 * If a reduced search still fails high the position is so good that searching the real moves isn't needed.
+	 * This assumes moving is never worse than passing, which is wrong in zugzwang, so there is no null move
+	 * when in check, when the side to move only has pawns left or directly after another null move.
+	 * 
+	 * Close to the leaves null window nodes are also pruned by their static evaluation: a node far enough
+	 * above beta fails high straight away (reverse futility pruning) and one far enough below alpha only
+	 * searches moves that change the material (futility pruning). Quiet moves late in the move ordering
+	 * are searched with reduced depth and searched again at full depth if they beat alpha (late move reductions).
 	 * @param depth the number of times the method recurses
 	 * @param alpha 
 	 * @param beta
 	 * @param int plyFromRoot a number used to tell if it is the root of the tree
+	 * @param allowNullMove false directly after a null move
 	 * @return the int value of the best move
 	 */
 	
 	
-	private int search(int depth, int alpha, int beta, int plyFromRoot) {
+	private int search(int depth, int alpha, int beta, int plyFromRoot, boolean allowNullMove) {
 		
 		
+		if (abortSearch) {
+			return 0;
+		}
+		pvLength[plyFromRoot] = 0;
+		// a repeated position can be repeated again so score it as a draw, like 100 plies without a pawn move or capture
+		if (plyFromRoot > 0 && board.IsRepetition()) {
+			return 0;
+		}
+		if (plyFromRoot > 0 && board.fiftyMoveCounter >= 100) {
+			// unless the move that reached the 100th ply mated, checkmate takes precedence over the fifty move rule
+			return isCheckmate(plyFromRoot) ? -(MATE_SCORE - plyFromRoot) : 0;
+		}
+		if (plyFromRoot > 0) {
+			// mate distance pruning: no line from here can do better than mating on the next move
+			// or worse than being mated now, so the window can be narrowed to those scores
+			alpha = Math.max(alpha, -(MATE_SCORE - plyFromRoot));
+			beta = Math.min(beta, MATE_SCORE - plyFromRoot - 1);
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
 		if(depth == 0) {
-			return searchOnlyCaptures(alpha, beta);
-		}
-		List<Move> moves = moveGenerator.generateMoves(board);
-		moveOrdering(board, moves);
-		//for(Move m : moves) System.out.println(m);
-		//System.out.println();
-		if(moves.size() == 0) { //means there are no moves so check if stalemate or checkmate
-			return moveGenerator.inCheck ? NEGATIVE_INFINITY : 0;
-		}
-		for(int i = 0; i<moves.size(); i++) {
-			if(plyFromRoot == 0) {
-				System.out.println(".");
+			return searchOnlyCaptures(alpha, beta, plyFromRoot);
+		}
+		numNodes++;
+		checkLimits();
+		
+		boolean pvNode = beta - alpha > 1;
+		// Use the stored result if this position has already been searched deep enough,
+		// otherwise the stored best move is still the best candidate to search first.
+		// PV nodes always search their moves so the principal variation below them is complete.
+		int hashMove = Move.InvalidMoveValue;
+		long ttEntry = transpositionTable.probe(board.ZobristKey);
+		if (ttEntry != TranspositionTable.NoEntry) {
+			hashMove = TranspositionTable.move(ttEntry);
+			if (!pvNode && TranspositionTable.depth(ttEntry) >= depth) {
+				int ttScore = scoreFromTranspositionTable(TranspositionTable.score(ttEntry), plyFromRoot);
+				int bound = TranspositionTable.bound(ttEntry);
+				if (bound == TranspositionTable.Exact
+						|| (bound == TranspositionTable.LowerBound && ttScore >= beta)
+						|| (bound == TranspositionTable.UpperBound && ttScore <= alpha)) {
+					numTranspositions++;
+					return Math.max(alpha, Math.min(beta, ttScore));
+				}
+			}
+		}
+		
+		MovePicker movePicker = movePickers[plyFromRoot];
+		int previousMove = (plyFromRoot > 0) ? searchMoves[plyFromRoot - 1] : Move.InvalidMoveValue;
+		movePicker.init(board, hashMove, plyFromRoot, previousMove, true);
+		boolean inCheck = movePicker.inCheck();
+		
+		boolean futilityPruning = false;
+		if (!pvNode && !inCheck && plyFromRoot > 0) {
+			int staticEval = evaluate();
+			if (depth <= reverseFutilityMaxDepth && staticEval - reverseFutilityMargin * depth >= beta && !isMateScore(beta)) {
+				return beta;
+			}
+			
+			if (allowNullMove && depth >= nullMoveMinDepth && staticEval >= beta && !isMateScore(beta)
+					&& board.HasNonPawnMaterial(board.ColourToMoveIndex)) {
+				int reduction = (depth >= 6) ? 3 : 2;
+				searchMoves[plyFromRoot] = Move.InvalidMoveValue;
+				board.MakeNullMove();
+				int eval = -search(Math.max(0, depth - 1 - reduction), -beta, -beta + 1, plyFromRoot+1, false);
+				board.UnmakeNullMove();
+				if (abortSearch) {
+					return 0;
+				}
+				if (eval >= beta) {
+					return beta;
+				}
+			}
+			
+			futilityPruning = depth < futilityMargins.length && staticEval + futilityMargins[depth] <= alpha;
+		}
+		
+		int bound = TranspositionTable.UpperBound;
+		int bestMoveInPosition = Move.InvalidMoveValue;
+		int[] quietsSearched = quietsSearchedBuffers[plyFromRoot];
+		int numQuietsSearched = 0;
+		int numLegalMoves = 0;
+		for (int move = movePicker.nextMove(); move != Move.InvalidMoveValue; move = movePicker.nextMove()) {
+			int i = numLegalMoves++;
+			if(plyFromRoot == 0 && i == 0) {
+				// fall back to the first move if every move loses
+				bestMoveThisIteration = new Move((short) move);
+			}
+			boolean quiet = movePicker.isQuiet(move);
+			
+			searchMoves[plyFromRoot] = move;
+			board.MakeMove(move, true);
+			// quiet checks can lead to a mate, which the static evaluation knows nothing about,
+			// so they are neither futility pruned nor reduced
+			boolean givesCheck = quiet && i > 0 && board.InCheck();
+			if (futilityPruning && quiet && i > 0 && !givesCheck) {
+				board.UnmakeMove(move, true);
+				continue;
+			}
+			int eval;
+			if (i == 0) {
+				eval = -search(depth - 1, -beta, -alpha, plyFromRoot+1, true);
+			} else {
+				int reduction = 0;
+				if (quiet && !inCheck && !givesCheck && depth >= lmrMinDepth && i >= lmrMinMoveIndex) {
+					reduction = lateMoveReductions[Math.min(depth, MAX_PLY - 1)][i];
+					if (pvNode) {
+						reduction--;
+					}
+					reduction = Math.max(0, Math.min(reduction, depth - 1));
+				}
+				eval = -search(depth - 1 - reduction, -alpha - 1, -alpha, plyFromRoot+1, true);
+				if (eval > alpha && reduction > 0) {
+					eval = -search(depth - 1, -alpha - 1, -alpha, plyFromRoot+1, true);
+				}
+				if (eval > alpha && eval < beta) {
+					eval = -search(depth - 1, -beta, -alpha, plyFromRoot+1, true);
+				}
+			}
+			board.UnmakeMove(move, true);
+			// the result of an aborted search can't be trusted so don't store it
+			if (abortSearch) {
+				return 0;
 			}
-			board.MakeMove(moves.get(i), true);
-			int eval = -search(depth - 1, -beta, -alpha, plyFromRoot+1);
-			board.UnmakeMove(moves.get(i), true);
 			if(eval >= beta) {
+				if(plyFromRoot == 0) {
+					bestMoveThisIteration = new Move((short) move);
+				}
+				if (pvNode) {
+					// mate distance pruning lowers beta to the fastest possible mate, finding that mate fails high
+					// here but is an exact score for the parent, which needs the line to report it
+					updatePrincipalVariation(plyFromRoot, move);
+				}
+				if (quiet) {
+					updateQuietMoveOrdering(move, quietsSearched, numQuietsSearched, depth, plyFromRoot);
+				}
+				transpositionTable.store(board.ZobristKey, depth, scoreToTranspositionTable(beta, plyFromRoot), TranspositionTable.LowerBound, move);
 				return beta;
 			}
 			if (eval > alpha) {
 				alpha = eval;
+				bound = TranspositionTable.Exact;
+				bestMoveInPosition = move;
+				updatePrincipalVariation(plyFromRoot, move);
 				if(plyFromRoot == 0) {
-					bestMoveThisIteration = moves.get(i);
+					bestMoveThisIteration = new Move((short) move);
 				}
 			}
+			if (quiet) {
+				quietsSearched[numQuietsSearched++] = move;
+			}
+		}
+		if(numLegalMoves == 0) { //means there are no moves so check if stalemate or checkmate
+			return inCheck ? -(MATE_SCORE - plyFromRoot) : 0;
 		}
 		
+		transpositionTable.store(board.ZobristKey, depth, scoreToTranspositionTable(alpha, plyFromRoot), bound, bestMoveInPosition);
 		return alpha;
 		
 	}
 	
 	
+	/**
+	 * @return true if the side to move is in check and has no legal moves
+	 */
+	private boolean isCheckmate(int plyFromRoot) {
+		if (!board.InCheck()) {
+			return false;
+		}
+		MovePicker movePicker = movePickers[plyFromRoot];
+		movePicker.init(board, Move.InvalidMoveValue, plyFromRoot, Move.InvalidMoveValue, true);
+		return movePicker.nextMove() == Move.InvalidMoveValue;
+	}
+	
+	/**
+	 * records a quiet move that caused a beta cutoff: it becomes the first killer move at this ply and the
+	 * countermove to the previous move, its history grows and the history of the quiet moves searched
+	 * before it shrinks
+	 */
+	private void updateQuietMoveOrdering(int move, int[] quietsSearched, int numQuietsSearched, int depth, int plyFromRoot) {
+		int[] plyKillers = killerMoves[plyFromRoot];
+		if (plyKillers[0] != move) {
+			plyKillers[1] = plyKillers[0];
+			plyKillers[0] = move;
+		}
+		if (plyFromRoot > 0) {
+			int previousMove = searchMoves[plyFromRoot - 1];
+			if (previousMove != Move.InvalidMoveValue) {
+				counterMoves[Move.getStartSquare(previousMove)][Move.getTargetSquare(previousMove)] = move;
+			}
+		}
+		int[][] colourHistory = history[board.ColourToMoveIndex];
+		int bonus = Math.min(depth * depth, 400);
+		updateHistory(colourHistory, move, bonus);
+		for (int i = 0; i < numQuietsSearched; i++) {
+			updateHistory(colourHistory, quietsSearched[i], -bonus);
+		}
+	}
+	
+	private static void updateHistory(int[][] colourHistory, int move, int bonus) {
+		int[] fromHistory = colourHistory[Move.getStartSquare(move)];
+		int to = Move.getTargetSquare(move);
+		fromHistory[to] += bonus - fromHistory[to] * Math.abs(bonus) / maxHistory;
+	}
+	
+	/**
+	 * makes the line at plyFromRoot the given move followed by the line found after it
+	 */
+	private void updatePrincipalVariation(int plyFromRoot, int move) {
+		int[] line = pvTable[plyFromRoot];
+		line[0] = move;
+		int childLength = (plyFromRoot + 1 < MAX_PLY) ? pvLength[plyFromRoot + 1] : 0;
+		System.arraycopy(pvTable[plyFromRoot + 1], 0, line, 1, Math.min(childLength, MAX_PLY - 1));
+		pvLength[plyFromRoot] = childLength + 1;
+	}
+	
+	/**
+	 * @return the static evaluation of the current position, from the evaluation cache if it has been evaluated before
+	 */
+	private int evaluate() {
+		numEvaluationCacheProbes++;
+		int eval = evaluationCache.probe(board.ZobristKey);
+		if (eval == EvaluationCache.NoEntry) {
+			eval = board.evaluate();
+			evaluationCache.store(board.ZobristKey, eval);
+		} else {
+			numEvaluationCacheHits++;
+		}
+		return eval;
+	}
+	
 	/**
 	 * searchOnlyCaptures uses the move generator to only search the capture moves
 	 * this method will give a better idea of the evaluation at the end of a regular search
 	 * branch to prevent situations where for instance the opposing player captures on the next
 	 * move thus making the evaluation wildly different.
+	 * Captures that lose material by static exchange evaluation aren't searched (see MovePicker), nor
+	 * are captures that can't bring the score up to alpha (delta pruning).
+	 * When the side to move is in check it can't stand pat on the static evaluation, so every evasion
+	 * is searched and having none is checkmate.
 	 * @param alpha
 	 * @param beta
+	 * @param plyFromRoot used to pick the move buffer for this ply
 	 * @return
 	 */
-	private int searchOnlyCaptures(int alpha, int beta) {
-		int eval = board.evaluate();
+	private int searchOnlyCaptures(int alpha, int beta, int plyFromRoot) {
+		if (abortSearch) {
+			return 0;
+		}
+		numNodes++;
+		checkLimits();
+		boolean inCheck = board.InCheck();
+		int eval = evaluate();
 		//System.out.println("eval" + eval);
 		//System.out.println("beta" + beta);
-		if (eval >= beta) {
-			return beta;
-		}
-		if (eval > alpha) {
-			alpha = eval;
-		}
-		List<Move> moves = moveGenerator.generateMoves(board, false);
-		
-		moveOrdering(board, moves);
-		for(Move m : moves) {
-			board.MakeMove(m, true);
-			eval = -searchOnlyCaptures(-beta, -alpha);
-			board.UnmakeMove(m, true);
-			if(eval >= beta) {
+		if (!inCheck) {
+			if (eval >= beta) {
 				return beta;
 			}
 			if (eval > alpha) {
 				alpha = eval;
 			}
 		}
-		//System.out.println("alpha" + alpha);
-		return alpha;
-	}
-	
-	
-	
-	/**
-	 * moveOrdering adapted from SebLague
-	 * 
-	 */
-	
-	final int squareControlledByOpponentPawnPenalty = 350;
-	
-	private void moveOrdering(AIBoard board, List<Move> moves) {
-		Move hashMove = Move.getInvalidMove();
-		int[] moveScores = new int[moves.size()];
-		for(int i = 0; i < moves.size(); i++) {
-			int score = 0;
-			int pieceToMove = Piece.PieceType(board.Square[moves.get(i).getStartSquare()]);
-			int capturedPiece = Piece.PieceType(board.Square[moves.get(i).getTargetSquare()]);
-			int moveFlag = moves.get(i).getMoveFlag();
-			
-			if(capturedPiece != Piece.None) {
-				score = 10 * getPieceValue(capturedPiece) - getPieceValue(pieceToMove);
-			}
-			
-			if (pieceToMove == Piece.Pawn) {
-
-				if (moveFlag == Move.Flag.PromoteToQueen) {
-					score += board.queenValue;
-				} else if (moveFlag == Move.Flag.PromoteToKnight) {
-					score += board.knightValue;
-				} else if (moveFlag == Move.Flag.PromoteToRook) {
-					score += board.rookValue;
-				} else if (moveFlag == Move.Flag.PromoteToBishop) {
-					score += board.bishopValue;
-				}
-			} else {
-				// Penalize moving piece to a square attacked by opponent pawn
-				if (BitBoardUtility.ContainsSquare (moveGenerator.opponentPawnAttackMap, moves.get(i).getTargetSquare())) {
-					score -= squareControlledByOpponentPawnPenalty;
+		if (plyFromRoot >= MAX_PLY - 1) {
+			return alpha;
+		}
+		MovePicker movePicker = movePickers[plyFromRoot];
+		// in check the quiet evasions are picked as well as the captures
+		movePicker.init(board, Move.InvalidMoveValue, plyFromRoot, Move.InvalidMoveValue, inCheck);
+		int standPat = eval;
+		int numSearched = 0;
+		for (int move = movePicker.nextMove(); move != Move.InvalidMoveValue; move = movePicker.nextMove()) {
+			// delta pruning: skip captures that can't raise the score to alpha even with a margin for positional gains
+			if (!inCheck && !Move.isPromotion(move)) {
+				int capturedPiece = (Move.getMoveFlag(move) == Move.Flag.EnPassantCapture) ? Piece.Pawn : Piece.PieceType(board.Square[Move.getTargetSquare(move)]);
+				if (standPat + MovePicker.getPieceValue(capturedPiece) + deltaMargin <= alpha) {
+					continue;
 				}
 			}
-			if (Move.isSameMove(moves.get(i), hashMove)) {
-				score += 10000;
-			}
-
-			moveScores[i] = score;
-		}
-		Sort(moves, moveScores);
-				
-	}
-	
-	
-	/*
-	 * getPieceValue written by SebLague
-	 */
-	static int getPieceValue (int pieceType) {
-		switch (pieceType) {
-			case Piece.Queen:
-				return AIBoard.queenValue;
-			case Piece.Rook:
-				return AIBoard.rookValue;
-			case Piece.Knight:
-				return AIBoard.knightValue;
-			case Piece.Bishop:
-				return AIBoard.bishopValue;
-			case Piece.Pawn:
-				return AIBoard.pawnValue;
-			default:
+			board.MakeMove(move, true);
+			eval = -searchOnlyCaptures(-beta, -alpha, plyFromRoot + 1);
+			board.UnmakeMove(move, true);
+			numSearched++;
+			if (abortSearch) {
 				return 0;
-		}
-	}
-	/**
-	 * Sort written by SebLague and adapted to java by Graham Young
-	 * 
-	 */
-	
-	void Sort (List<Move> moves, int[] moveScores) {
-		// Sort the moves list based on scores
-		for (int i = 0; i < moves.size() - 1; i++) {
-			for (int j = i + 1; j > 0; j--) {
-				int swapIndex = j - 1;
-				if (moveScores[i] < moveScores[j]) {
-					Move tempMove = moves.get(j);
-					moves.set(j, moves.get(swapIndex));
-					moves.set(swapIndex, tempMove);
-					int tempScore = moveScores[j];
-					moveScores[j] = moveScores[swapIndex];
-					moveScores[swapIndex] = tempScore;
-					
-				}
 			}
+			if(eval >= beta) {
+				return beta;
+			}
+			if (eval > alpha) {
+				alpha = eval;
+			}
+		}
+		if (inCheck && numSearched == 0) {
+			return -(MATE_SCORE - plyFromRoot);
 		}
+		//System.out.println("alpha" + alpha);
+		return alpha;
 	}
 	
 	
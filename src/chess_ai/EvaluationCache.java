@@ -0,0 +1,69 @@
+package chess_ai;
+
+import java.util.Arrays;
+
+/**
+ * Small cache of static evaluations keyed by zobrist key. The capture search evaluates every position
+ * it reaches and many of them are reached again in sibling subtrees, so ChessAI looks the evaluation up
+ * here before calling AIBoard.evaluate.
+ *
+ * Like the TranspositionTable the cache is shared by all search threads without locking: each slot stores
+ * the key xor'd with the entry so a slot torn by two threads writing at once never matches a key. For the
+ * same reason it keeps no hit statistics, each ChessAI counts its own probes and hits.
+ *
+ * @author Graham Young
+ *
+ */
+public class EvaluationCache {
+
+	public static final int DEFAULT_SIZE_MB = 4;
+
+	public static final int NoEntry = Integer.MIN_VALUE;
+
+	static final int bytesPerSlot = 16;
+	// set in every stored entry so an entry is never 0
+	static final long validBit = 1L << 32;
+
+	final long[] keys;
+	final long[] entries;
+	final int indexMask;
+
+	public EvaluationCache() {
+		this(DEFAULT_SIZE_MB);
+	}
+
+	/**
+	 * @param sizeMB approximate memory used by the cache in megabytes, rounded down to a power of two number of slots
+	 */
+	public EvaluationCache(int sizeMB) {
+		long numSlots = Long.highestOneBit(Math.max(1, Math.min(((long) sizeMB * 1024 * 1024) / bytesPerSlot, 1 << 30)));
+		indexMask = (int) numSlots - 1;
+		keys = new long[(int) numSlots];
+		entries = new long[(int) numSlots];
+	}
+
+	/**
+	 * @param key zobrist key of the position
+	 * @return the stored evaluation or NoEntry if the position isn't in the cache
+	 */
+	public int probe(long key) {
+		int index = (int) key & indexMask;
+		long entry = entries[index];
+		if (entry != 0 && (keys[index] ^ entry) == key) {
+			return (int) entry;
+		}
+		return NoEntry;
+	}
+
+	public void store(long key, int eval) {
+		int index = (int) key & indexMask;
+		long entry = (eval & 0xFFFFFFFFL) | validBit;
+		keys[index] = key ^ entry;
+		entries[index] = entry;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(entries, 0);
+	}
+}
@@ -0,0 +1,308 @@
+package chess_ai;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BitBoardUtility;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+import chess_ai.ai_board.Piece;
+
+/**
+ * Hands out the moves of one search node in stages, most promising first:
+ * the hash move from the transposition table, captures that don't lose material, the killer moves and the
+ * countermove, the remaining quiet moves and finally the captures that lose material according to static
+ * exchange evaluation (the capture search leaves those out altogether unless the side to move is in check). Each stage is only generated when
+ * the search asks for a move from it, so a node that cuts off on the hash move or a capture never generates
+ * its quiet moves.
+ *
+ * Every ply of the search has its own picker (and MoveGenerator, whose attack data stays valid for the
+ * node while the search looks at the positions below it). The killer, history and countermove tables
+ * belong to the ChessAI and are shared by all of its pickers.
+ *
+ * @author Graham Young
+ *
+ */
+public class MovePicker {
+
+	static final int HashMoveStage = 0;
+	static final int GenerateCapturesStage = 1;
+	static final int CapturesStage = 2;
+	static final int KillersStage = 3;
+	static final int GenerateQuietsStage = 4;
+	static final int QuietsStage = 5;
+	static final int BadCapturesStage = 6;
+	static final int DoneStage = 7;
+
+	static final int squareControlledByOpponentPawnPenalty = 350;
+	// quiet moves are ordered by history, scaled to +-historyScoreRange
+	static final int historyScoreRange = 70;
+
+	final MoveGenerator moveGenerator = new MoveGenerator();
+	final int[] moves = new int[MoveGenerator.MaxMoves];
+	final int[] moveScores = new int[MoveGenerator.MaxMoves];
+	// killer moves and countermove for the current node, already checked to be legal quiet moves
+	final int[] killers = new int[3];
+	// captures that lose material, searched after the quiet moves
+	final int[] badCaptures = new int[MoveGenerator.MaxMoves];
+
+	final int[][] killerMoves;
+	final int[][][] history;
+	final int[][] counterMoves;
+
+	AIBoard board;
+	boolean includeQuiets;
+	int stage;
+	int hashMove;
+	int numMoves;
+	int index;
+	int numKillers;
+	int numBadCaptures;
+	int plyFromRoot;
+	int previousMove;
+
+	/**
+	 * @param killerMoves two killer moves per ply from the root
+	 * @param history history scores indexed by colour, start square and target square
+	 * @param counterMoves countermove indexed by the start and target square of the previous move
+	 */
+	public MovePicker(int[][] killerMoves, int[][][] history, int[][] counterMoves) {
+		this.killerMoves = killerMoves;
+		this.history = history;
+		this.counterMoves = counterMoves;
+	}
+
+	/**
+	 * starts picking the moves of the current position on the board
+	 * @param hashMove move from the transposition table (any value, it is checked for legality) or Move.InvalidMoveValue,
+	 * ignored when only picking captures
+	 * @param previousMove the move that led to this position, for the countermove, or Move.InvalidMoveValue
+	 * @param includeQuiets false to only pick captures (for the capture search)
+	 */
+	public void init(AIBoard board, int hashMove, int plyFromRoot, int previousMove, boolean includeQuiets) {
+		this.board = board;
+		this.plyFromRoot = plyFromRoot;
+		this.previousMove = previousMove;
+		this.includeQuiets = includeQuiets;
+		numBadCaptures = 0;
+		moveGenerator.beginStagedGeneration(board);
+		if (includeQuiets && hashMove != Move.InvalidMoveValue && moveGenerator.isLegal(hashMove)) {
+			this.hashMove = hashMove;
+			stage = HashMoveStage;
+		} else {
+			this.hashMove = Move.InvalidMoveValue;
+			stage = GenerateCapturesStage;
+		}
+	}
+
+	boolean inCheck() {
+		return moveGenerator.inCheck;
+	}
+
+	/**
+	 * @return the next move to search or Move.InvalidMoveValue if there are none left
+	 */
+	public int nextMove() {
+		while (true) {
+			switch (stage) {
+				case HashMoveStage:
+					stage = GenerateCapturesStage;
+					return hashMove;
+				case GenerateCapturesStage:
+					numMoves = moveGenerator.generateCaptures(moves);
+					scoreMoves();
+					index = 0;
+					stage = CapturesStage;
+					break;
+				case CapturesStage:
+					while (index < numMoves) {
+						pickMove(moves, moveScores, numMoves, index);
+						int move = moves[index++];
+						if (move == hashMove) {
+							continue;
+						}
+						if (isLosingCapture(move)) {
+							if (includeQuiets) {
+								badCaptures[numBadCaptures++] = move;
+								continue;
+							}
+							// a losing capture can still be the only way out of check
+							if (!moveGenerator.inCheck) {
+								continue;
+							}
+						}
+						return move;
+					}
+					stage = (includeQuiets) ? KillersStage : DoneStage;
+					if (stage == KillersStage) {
+						findKillers();
+						index = 0;
+					}
+					break;
+				case KillersStage:
+					if (index < numKillers) {
+						return killers[index++];
+					}
+					stage = GenerateQuietsStage;
+					break;
+				case GenerateQuietsStage:
+					numMoves = moveGenerator.generateQuietMoves(moves);
+					scoreMoves();
+					index = 0;
+					stage = QuietsStage;
+					break;
+				case QuietsStage:
+					while (index < numMoves) {
+						pickMove(moves, moveScores, numMoves, index);
+						int move = moves[index++];
+						if (move != hashMove && !isKiller(move)) {
+							return move;
+						}
+					}
+					index = 0;
+					stage = BadCapturesStage;
+					break;
+				case BadCapturesStage:
+					if (index < numBadCaptures) {
+						return badCaptures[index++];
+					}
+					stage = DoneStage;
+					break;
+				default:
+					return Move.InvalidMoveValue;
+			}
+		}
+	}
+
+	/**
+	 * @return true if static exchange evaluation says the capture loses material. Taking a piece worth at least
+	 * as much as the capturing piece never does, so the exchange is only evaluated for the other captures.
+	 */
+	boolean isLosingCapture(int move) {
+		int capturingPiece = Piece.PieceType(board.Square[Move.getStartSquare(move)]);
+		int capturedPiece = Piece.PieceType(board.Square[Move.getTargetSquare(move)]);
+		if (capturingPiece == Piece.King || getPieceValue(capturedPiece) >= getPieceValue(capturingPiece)) {
+			return false;
+		}
+		return board.StaticExchangeEvaluation(move) < 0;
+	}
+
+	/**
+	 * collects the killer moves of this ply and the countermove that are legal quiet moves here
+	 * and aren't the hash move
+	 */
+	void findKillers() {
+		numKillers = 0;
+		addKiller(killerMoves[plyFromRoot][0]);
+		addKiller(killerMoves[plyFromRoot][1]);
+		if (previousMove != Move.InvalidMoveValue) {
+			addKiller(counterMoves[Move.getStartSquare(previousMove)][Move.getTargetSquare(previousMove)]);
+		}
+	}
+
+	void addKiller(int move) {
+		if (move == Move.InvalidMoveValue || move == hashMove || isKiller(move) || !isQuiet(move) || !moveGenerator.isLegal(move)) {
+			return;
+		}
+		killers[numKillers++] = move;
+	}
+
+	boolean isKiller(int move) {
+		for (int i = 0; i < numKillers; i++) {
+			if (killers[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the move neither captures nor promotes
+	 */
+	boolean isQuiet(int move) {
+		return board.Square[Move.getTargetSquare(move)] == Piece.None
+				&& Move.getMoveFlag(move) != Move.Flag.EnPassantCapture && !Move.isPromotion(move);
+	}
+
+	/**
+	 * moveOrdering adapted from SebLague
+	 * scores the first numMoves moves into moveScores. Captures are scored by the value of the captured piece
+	 * and the piece capturing it, quiet moves by the history table.
+	 */
+	void scoreMoves() {
+		int[][] colourHistory = history[board.ColourToMoveIndex];
+		for(int i = 0; i < numMoves; i++) {
+			int score = 0;
+			int pieceToMove = Piece.PieceType(board.Square[Move.getStartSquare(moves[i])]);
+			int capturedPiece = Piece.PieceType(board.Square[Move.getTargetSquare(moves[i])]);
+			int moveFlag = Move.getMoveFlag(moves[i]);
+
+			if(capturedPiece != Piece.None) {
+				score = 10 * getPieceValue(capturedPiece) - getPieceValue(pieceToMove);
+			} else if (moveFlag != Move.Flag.EnPassantCapture && !Move.isPromotion(moves[i])) {
+				score = colourHistory[Move.getStartSquare(moves[i])][Move.getTargetSquare(moves[i])] * historyScoreRange / ChessAI.maxHistory;
+			}
+
+			if (pieceToMove == Piece.Pawn) {
+
+				if (moveFlag == Move.Flag.PromoteToQueen) {
+					score += AIBoard.queenValue;
+				} else if (moveFlag == Move.Flag.PromoteToKnight) {
+					score += AIBoard.knightValue;
+				} else if (moveFlag == Move.Flag.PromoteToRook) {
+					score += AIBoard.rookValue;
+				} else if (moveFlag == Move.Flag.PromoteToBishop) {
+					score += AIBoard.bishopValue;
+				}
+			} else {
+				// Penalize moving piece to a square attacked by opponent pawn
+				if (BitBoardUtility.ContainsSquare (moveGenerator.opponentPawnAttackMap, Move.getTargetSquare(moves[i]))) {
+					score -= squareControlledByOpponentPawnPenalty;
+				}
+			}
+
+			moveScores[i] = score;
+		}
+	}
+
+	/**
+	 * swaps the highest scoring of moves[index..numMoves) into moves[index] (and its score into moveScores[index]).
+	 * Most nodes cut off after one or two moves, so selecting the next move when it is needed is cheaper
+	 * than sorting the whole list up front.
+	 */
+	static void pickMove(int[] moves, int[] moveScores, int numMoves, int index) {
+		int bestIndex = index;
+		int bestScore = moveScores[index];
+		for (int i = index + 1; i < numMoves; i++) {
+			if (moveScores[i] > bestScore) {
+				bestScore = moveScores[i];
+				bestIndex = i;
+			}
+		}
+		if (bestIndex != index) {
+			int move = moves[bestIndex];
+			moves[bestIndex] = moves[index];
+			moves[index] = move;
+			moveScores[bestIndex] = moveScores[index];
+			moveScores[index] = bestScore;
+		}
+	}
+
+	/*
+	 * getPieceValue written by SebLague
+	 */
+	static int getPieceValue (int pieceType) {
+		switch (pieceType) {
+			case Piece.Queen:
+				return AIBoard.queenValue;
+			case Piece.Rook:
+				return AIBoard.rookValue;
+			case Piece.Knight:
+				return AIBoard.knightValue;
+			case Piece.Bishop:
+				return AIBoard.bishopValue;
+			case Piece.Pawn:
+				return AIBoard.pawnValue;
+			default:
+				return 0;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package chess_ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * Multi-threaded perft (counts the leaf nodes of the move tree to a fixed depth), used to check the
+ * move generator against known node counts.
+ *
+ * The moves at the root are split across a ForkJoinPool, and so are the moves below them while the
+ * remaining depth is larger than splitDepth, so deep counts still give every thread work. Each task owns
+ * a copy of the board and its own MoveGenerator, the only thing shared between threads is the optional
+ * PerftTable that caches the node count of positions which were already counted.
+ *
+ * Can be run from the command line: Perft <depth> [fen] [threads] [hash size in MB], prints the node count
+ * of every root move.
+ *
+ * @author Graham Young
+ *
+ */
+public class Perft {
+
+	// tasks with this remaining depth or less are counted on the thread that runs them
+	static final int splitDepth = 4;
+
+	private final ForkJoinPool pool;
+	// null if counts are not cached
+	private final PerftTable table;
+
+	long lastNodes;
+	long lastTime;
+
+	public Perft() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param numThreads number of threads used to count
+	 */
+	public Perft(int numThreads) {
+		this(numThreads, 0);
+	}
+
+	/**
+	 * @param numThreads number of threads used to count
+	 * @param hashSizeMB size of the table caching node counts, 0 to count without caching
+	 */
+	public Perft(int numThreads, int hashSizeMB) {
+		pool = new ForkJoinPool(Math.max(1, numThreads));
+		table = (hashSizeMB > 0) ? new PerftTable(hashSizeMB) : null;
+	}
+
+	/**
+	 * @param board the position to count from, it is not changed
+	 * @param depth
+	 * @return the number of leaf nodes depth moves from the position
+	 */
+	public long perft(AIBoard board, int depth) {
+		long startTime = System.currentTimeMillis();
+		long nodes = (depth <= 0) ? 1 : pool.invoke(new PerftTask(new AIBoard(board), depth, table));
+		lastNodes = nodes;
+		lastTime = System.currentTimeMillis() - startTime;
+		return nodes;
+	}
+
+	/**
+	 * @param board the position to count from, it is not changed
+	 * @param depth
+	 * @return the number of leaf nodes below every root move (in long algebraic notation), in move generation order
+	 */
+	public Map<String, Long> divide(AIBoard board, int depth) {
+		long startTime = System.currentTimeMillis();
+		AIBoard rootBoard = new AIBoard(board);
+		int[] moves = new int[MoveGenerator.MaxMoves];
+		int numMoves = new MoveGenerator().generateMoves(rootBoard, moves);
+
+		PerftTask[] tasks = new PerftTask[numMoves];
+		for (int i = 0; i < numMoves; i++) {
+			rootBoard.MakeMove(moves[i], true);
+			tasks[i] = new PerftTask(new AIBoard(rootBoard), depth - 1, table);
+			rootBoard.UnmakeMove(moves[i], true);
+			if (depth > 1) {
+				pool.execute(tasks[i]);
+			}
+		}
+
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		long nodes = 0;
+		for (int i = 0; i < numMoves; i++) {
+			long count = (depth > 1) ? tasks[i].join() : 1;
+			counts.put(UCI.moveToString(moves[i]), count);
+			nodes += count;
+		}
+		lastNodes = nodes;
+		lastTime = System.currentTimeMillis() - startTime;
+		return counts;
+	}
+
+	/**
+	 * @return the node count of the last perft or divide
+	 */
+	public long getLastNodes() {
+		return lastNodes;
+	}
+
+	/**
+	 * @return the time the last perft or divide took in milliseconds
+	 */
+	public long getLastTime() {
+		return lastTime;
+	}
+
+	public long getNodesPerSecond() {
+		return lastNodes * 1000 / Math.max(1, lastTime);
+	}
+
+	/**
+	 * @return the table caching node counts or null if counts are not cached
+	 */
+	public PerftTable getTable() {
+		return table;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * counts the leaf nodes below the position of its board, splitting into a task per move while the depth is large
+	 */
+	static class PerftTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		final AIBoard board;
+		final int depth;
+		final PerftTable table;
+
+		PerftTask(AIBoard board, int depth, PerftTable table) {
+			this.board = board;
+			this.depth = depth;
+			this.table = table;
+		}
+
+		@Override
+		protected Long compute() {
+			MoveGenerator moveGenerator = new MoveGenerator();
+			if (depth <= splitDepth) {
+				return count(board, moveGenerator, new int[depth + 1][MoveGenerator.MaxMoves], depth, table);
+			}
+			if (table != null) {
+				long nodes = table.probe(board.ZobristKey, depth);
+				if (nodes != PerftTable.NoEntry) {
+					return nodes;
+				}
+			}
+
+			int[] moves = new int[MoveGenerator.MaxMoves];
+			int numMoves = moveGenerator.generateMoves(board, moves);
+			PerftTask[] tasks = new PerftTask[numMoves];
+			for (int i = 0; i < numMoves; i++) {
+				board.MakeMove(moves[i], true);
+				tasks[i] = new PerftTask(new AIBoard(board), depth - 1, table);
+				board.UnmakeMove(moves[i], true);
+			}
+			invokeAll(tasks);
+
+			long nodes = 0;
+			for (PerftTask task : tasks) {
+				nodes += task.join();
+			}
+			if (table != null) {
+				table.store(board.ZobristKey, depth, nodes);
+			}
+			return nodes;
+		}
+	}
+
+	/**
+	 * single threaded count, the moves at depth 1 are counted without being played
+	 * @param moveBuffers one move buffer per remaining depth so the count doesn't allocate
+	 * @param table table caching node counts or null
+	 */
+	static long count(AIBoard board, MoveGenerator moveGenerator, int[][] moveBuffers, int depth, PerftTable table) {
+		if (depth == 0) {
+			return 1;
+		}
+		// depth 1 is cheaper to count than to look up
+		boolean useTable = table != null && depth > 1;
+		if (useTable) {
+			long nodes = table.probe(board.ZobristKey, depth);
+			if (nodes != PerftTable.NoEntry) {
+				return nodes;
+			}
+		}
+		int[] moves = moveBuffers[depth];
+		int numMoves = moveGenerator.generateMoves(board, moves);
+		if (depth == 1) {
+			return numMoves;
+		}
+		long nodes = 0;
+		for (int i = 0; i < numMoves; i++) {
+			board.MakeMove(moves[i], true);
+			nodes += count(board, moveGenerator, moveBuffers, depth - 1, table);
+			board.UnmakeMove(moves[i], true);
+		}
+		if (useTable) {
+			table.store(board.ZobristKey, depth, nodes);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Main function
+	 * @param args depth, then optionally a fen (in quotes), the number of threads and the hash size in MB
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: Perft <depth> [fen] [threads] [hash size in MB]");
+			return;
+		}
+		int depth = Integer.parseInt(args[0]);
+		AIBoard board = new AIBoard();
+		if (args.length > 1) {
+			board.LoadPosition(args[1]);
+		} else {
+			board.LoadStartPosition();
+		}
+		int numThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int hashSizeMB = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+		Perft perft = new Perft(numThreads, hashSizeMB);
+
+		for (Map.Entry<String, Long> entry : perft.divide(board, depth).entrySet()) {
+			System.out.println(entry.getKey() + ": " + entry.getValue());
+		}
+		System.out.println("nodes " + perft.getLastNodes() + " time " + perft.getLastTime() + " nps " + perft.getNodesPerSecond());
+		if (perft.getTable() != null) {
+			System.out.printf("hash probes %d hits %d (%.1f%%)%n", perft.getTable().getProbes(), perft.getTable().getHits(), perft.getTable().hitRate());
+		}
+		perft.shutdown();
+	}
+}
@@ -0,0 +1,100 @@
+package chess_ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size table used by Perft to remember the node count below positions it has already counted,
+ * so subtrees reached again through a different move order are only counted once.
+ *
+ * Works like the TranspositionTable: buckets of a depth-preferred and an always-replace slot, entries
+ * packed into a long (bit 0-55: node count, bit 56-63: depth) and the key stored xor'd with the entry
+ * so the table can be shared by the perft threads without locking.
+ *
+ * @author Graham Young
+ *
+ */
+public class PerftTable {
+
+	public static final long NoEntry = -1;
+
+	static final int bytesPerSlot = 16;
+	static final int slotsPerBucket = 2;
+	static final long countMask = (1L << 56) - 1;
+
+	final long[] keys;
+	final long[] entries;
+	final int bucketMask;
+
+	final LongAdder probes = new LongAdder();
+	final LongAdder hits = new LongAdder();
+
+	/**
+	 * @param sizeMB approximate memory used by the table in megabytes, rounded down to a power of two number of buckets
+	 */
+	public PerftTable(int sizeMB) {
+		long numSlots = Math.max(slotsPerBucket, ((long) sizeMB * 1024 * 1024) / bytesPerSlot);
+		long numBuckets = Long.highestOneBit(Math.min(numSlots / slotsPerBucket, 1 << 29));
+		bucketMask = (int) numBuckets - 1;
+		keys = new long[(int) numBuckets * slotsPerBucket];
+		entries = new long[(int) numBuckets * slotsPerBucket];
+	}
+
+	/**
+	 * @param key zobrist key of the position
+	 * @param depth remaining depth
+	 * @return the node count stored for the position at this depth or NoEntry if there is none
+	 */
+	public long probe(long key, int depth) {
+		probes.increment();
+		int index = bucketIndex(key);
+		for (int slot = index; slot < index + slotsPerBucket; slot++) {
+			long entry = entries[slot];
+			if (entry != 0 && (keys[slot] ^ entry) == key && depth(entry) == depth) {
+				hits.increment();
+				return entry & countMask;
+			}
+		}
+		return NoEntry;
+	}
+
+	public void store(long key, int depth, long nodes) {
+		int index = bucketIndex(key);
+		long entry = (nodes & countMask) | ((long) depth << 56);
+		if (depth >= depth(entries[index])) {
+			keys[index] = key ^ entry;
+			entries[index] = entry;
+		} else {
+			keys[index + 1] = key ^ entry;
+			entries[index + 1] = entry;
+		}
+	}
+
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return hits per probe in percent
+	 */
+	public double hitRate() {
+		long numProbes = getProbes();
+		return (numProbes == 0) ? 0 : 100.0 * getHits() / numProbes;
+	}
+
+	public void resetStatistics() {
+		probes.reset();
+		hits.reset();
+	}
+
+	int bucketIndex(long key) {
+		return ((int) (key ^ (key >>> 32)) & bucketMask) * slotsPerBucket;
+	}
+
+	static int depth(long entry) {
+		return (int) (entry >>> 56);
+	}
+}
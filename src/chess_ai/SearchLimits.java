@@ -0,0 +1,88 @@
+package chess_ai;
+
+/**
+ * Limits for a single ChessAI search. Any limit left at 0 is ignored, if every limit is 0
+ * the search runs until maxDepth is reached or it is stopped. An infinite search ignores the depth
+ * limit and keeps going after it has proven a mate, it only ends when it is stopped.
+ * Times are in milliseconds.
+ *
+ * @author Graham Young
+ *
+ */
+public class SearchLimits {
+
+	public static final int MAX_DEPTH = 64;
+
+	// Time kept in reserve for communication and making the move after the search is stopped
+	static final int moveOverhead = 30;
+	// Number of moves the remaining clock time is spread over when movesToGo is unknown
+	static final int defaultMovesToGo = 30;
+
+	public int depth;
+	public long moveTime;
+	public long whiteTime;
+	public long blackTime;
+	public long whiteIncrement;
+	public long blackIncrement;
+	public int movesToGo;
+	public long nodes;
+	public boolean infinite;
+
+	public SearchLimits() {
+	}
+
+	public static SearchLimits depth(int depth) {
+		SearchLimits limits = new SearchLimits();
+		limits.depth = depth;
+		return limits;
+	}
+
+	public static SearchLimits moveTime(long moveTime) {
+		SearchLimits limits = new SearchLimits();
+		limits.moveTime = moveTime;
+		return limits;
+	}
+
+	public int maxDepth() {
+		if (infinite) {
+			return MAX_DEPTH;
+		}
+		return (depth > 0) ? Math.min(depth, MAX_DEPTH) : MAX_DEPTH;
+	}
+
+	/**
+	 * soft limit: once an iteration finishes after this time no new iteration is started
+	 * @return the soft time limit or 0 if the search is not timed
+	 */
+	public long softTimeLimit(boolean whiteToMove) {
+		if (moveTime > 0) {
+			return moveTime;
+		}
+		long timeLeft = (whiteToMove) ? whiteTime : blackTime;
+		long increment = (whiteToMove) ? whiteIncrement : blackIncrement;
+		if (timeLeft <= 0) {
+			return 0;
+		}
+		int moves = (movesToGo > 0) ? movesToGo : defaultMovesToGo;
+		long softLimit = timeLeft / moves + increment * 3 / 4;
+		return Math.max(1, Math.min(softLimit, hardTimeLimit(whiteToMove)));
+	}
+
+	/**
+	 * hard limit: the search is aborted as soon as this much time has passed
+	 * @return the hard time limit or 0 if the search is not timed
+	 */
+	public long hardTimeLimit(boolean whiteToMove) {
+		if (moveTime > 0) {
+			return Math.max(1, moveTime - moveOverhead);
+		}
+		long timeLeft = (whiteToMove) ? whiteTime : blackTime;
+		long increment = (whiteToMove) ? whiteIncrement : blackIncrement;
+		if (timeLeft <= 0) {
+			return 0;
+		}
+		int moves = (movesToGo > 0) ? movesToGo : defaultMovesToGo;
+		long hardLimit = Math.min(4 * (timeLeft / moves + increment), timeLeft / 2);
+		return Math.max(1, Math.min(hardLimit, timeLeft - moveOverhead));
+	}
+}
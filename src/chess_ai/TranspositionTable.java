@@ -0,0 +1,173 @@
+package chess_ai;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table used by ChessAI to remember the results of positions
+ * it has already searched.
+ *
+ * The table is split into buckets of two slots. The first slot of a bucket is depth-preferred
+ * (only replaced by a deeper search of any position, or by any search once the stored entry is
+ * from an older search), the second slot is always replaced.
+ *
+ * Entries are packed into a single long so the table can be stored in two preallocated
+ * primitive arrays and never allocates during search:
+ * bit 0-15: best move (16 bit move value, 0 if none)
+ * bit 16-47: score
+ * bit 48-55: depth
+ * bit 56-57: bound type (Exact, LowerBound or UpperBound)
+ * bit 58-63: age of the search that stored the entry
+ *
+ * The table can be shared by several search threads without locking. Each slot stores the key xor'd
+ * with the entry, so if two threads write the same slot at the same time and a reader sees the key of
+ * one write with the entry of the other, the key check fails and the slot is treated as empty.
+ *
+ * @author Graham Young
+ *
+ */
+public class TranspositionTable {
+
+	public static final int DEFAULT_SIZE_MB = 64;
+
+	// Bound types. 0 is never stored so that an empty slot can never look like a valid entry
+	public static final int Exact = 1;
+	// score is at least the stored value (search failed high)
+	public static final int LowerBound = 2;
+	// score is at most the stored value (search failed low)
+	public static final int UpperBound = 3;
+
+	public static final long NoEntry = 0;
+
+	static final int bytesPerSlot = 16;
+	static final int slotsPerBucket = 2;
+
+	final long[] keys;
+	final long[] entries;
+	final int bucketMask;
+
+	int age;
+
+	public TranspositionTable() {
+		this(DEFAULT_SIZE_MB);
+	}
+
+	/**
+	 * @param sizeMB approximate memory used by the table in megabytes, rounded down to a power of two number of buckets
+	 */
+	public TranspositionTable(int sizeMB) {
+		long numSlots = Math.max(slotsPerBucket, ((long) sizeMB * 1024 * 1024) / bytesPerSlot);
+		long numBuckets = Long.highestOneBit(Math.min(numSlots / slotsPerBucket, 1 << 29));
+		bucketMask = (int) numBuckets - 1;
+		keys = new long[(int) numBuckets * slotsPerBucket];
+		entries = new long[(int) numBuckets * slotsPerBucket];
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(entries, 0);
+		age = 0;
+	}
+
+	/**
+	 * called at the start of every new search so entries from earlier searches can be replaced
+	 */
+	public void newSearch() {
+		age = (age + 1) & 63;
+	}
+
+	/**
+	 * @param key zobrist key of the position
+	 * @return the packed entry stored for this position or NoEntry if there is none
+	 */
+	public long probe(long key) {
+		int index = bucketIndex(key);
+		long entry = entries[index];
+		if (entry != NoEntry && (keys[index] ^ entry) == key) {
+			return entry;
+		}
+		entry = entries[index + 1];
+		if (entry != NoEntry && (keys[index + 1] ^ entry) == key) {
+			return entry;
+		}
+		return NoEntry;
+	}
+
+	/**
+	 * stores the result of a search of the position with the given key
+	 * @param key zobrist key of the position
+	 * @param depth remaining depth the position was searched to
+	 * @param score score of the position from the perspective of the side to move
+	 * @param bound Exact, LowerBound or UpperBound
+	 * @param move best move found (0 if no move raised alpha)
+	 */
+	public void store(long key, int depth, int score, int bound, int move) {
+		int index = bucketIndex(key);
+		long depthPreferred = entries[index];
+		boolean depthPreferredMatches = (keys[index] ^ depthPreferred) == key;
+
+		// Keep the best move from a previous search of this position if this search did not find one
+		if (move == 0) {
+			long alwaysReplace = entries[index + 1];
+			if (depthPreferredMatches) {
+				move = move(depthPreferred);
+			} else if ((keys[index + 1] ^ alwaysReplace) == key) {
+				move = move(alwaysReplace);
+			}
+		}
+		long entry = pack(depth, score, bound, move, age);
+
+		if (depthPreferred == NoEntry || depthPreferredMatches || depth >= depth(depthPreferred) || age(depthPreferred) != age) {
+			keys[index] = key ^ entry;
+			entries[index] = entry;
+		} else {
+			keys[index + 1] = key ^ entry;
+			entries[index + 1] = entry;
+		}
+	}
+
+	/**
+	 * @return the approximate fraction of the table (in permill) used by the current search
+	 */
+	public int hashFull() {
+		int used = 0;
+		int sampleSize = Math.min(1000, entries.length);
+		for (int i = 0; i < sampleSize; i++) {
+			if (entries[i] != NoEntry && age(entries[i]) == age) {
+				used++;
+			}
+		}
+		return used * 1000 / sampleSize;
+	}
+
+	int bucketIndex(long key) {
+		return ((int) (key ^ (key >>> 32)) & bucketMask) * slotsPerBucket;
+	}
+
+	static long pack(int depth, int score, int bound, int move, int age) {
+		return (move & 0xFFFFL)
+				| ((score & 0xFFFFFFFFL) << 16)
+				| ((long) (depth & 0xFF) << 48)
+				| ((long) (bound & 0b11) << 56)
+				| ((long) (age & 63) << 58);
+	}
+
+	public static int move(long entry) {
+		return (int) (entry & 0xFFFF);
+	}
+
+	public static int score(long entry) {
+		return (int) (entry >>> 16);
+	}
+
+	public static int depth(long entry) {
+		return (int) (entry >>> 48) & 0xFF;
+	}
+
+	public static int bound(long entry) {
+		return (int) (entry >>> 56) & 0b11;
+	}
+
+	static int age(long entry) {
+		return (int) (entry >>> 58);
+	}
+}
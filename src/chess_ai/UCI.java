@@ -0,0 +1,319 @@
+package chess_ai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BoardRepresentation;
+import chess_ai.ai_board.FenUtility;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * Headless entry point that runs ChessAI as a UCI engine, so it can be used by chess GUIs and
+ * engine testing tools without starting the Swing game.
+ *
+ * Supported commands: uci, isready, setoption (Hash, Threads), ucinewgame, position, go, stop, quit.
+ *
+ * The board is kept between position commands. If a position command only adds moves to the previous
+ * one (which is what GUIs send during a game) just the new moves are played on the board.
+ *
+ * @author Graham Young
+ *
+ */
+public class UCI {
+
+	static final String engineName = "simple-chess-ai";
+	static final String engineAuthor = "Graham Young";
+
+	private int hashSizeMB = TranspositionTable.DEFAULT_SIZE_MB;
+	private int numThreads = 1;
+	private ChessAI ai = new ChessAI(true, hashSizeMB, numThreads);
+
+	private final AIBoard board = new AIBoard();
+	private final MoveGenerator moveGenerator = new MoveGenerator();
+	private final int[] legalMoves = new int[MoveGenerator.MaxMoves];
+	// start position and moves of the last position command, used to only play the new moves of the next one
+	private String currentStartPosition;
+	private final List<String> currentMoves = new ArrayList<String>();
+
+	private Thread searchThread;
+	// set by stop (or any command that ends the search), an infinite search waits for it before sending its best move
+	private volatile boolean stopRequested;
+
+	public UCI() {
+		board.LoadStartPosition();
+		currentStartPosition = FenUtility.startFen;
+		ai.setSearchListener(this::sendInfo);
+	}
+
+	/**
+	 * Main function, reads commands from standard input until quit or the end of the input
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		UCI uci = new UCI();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!uci.processCommand(line)) {
+				break;
+			}
+		}
+		uci.stopSearch();
+	}
+
+	/**
+	 * @param line a single command
+	 * @return false once the engine should quit
+	 */
+	public boolean processCommand(String line) {
+		String[] tokens = line.trim().split("\\s+");
+		switch (tokens[0]) {
+		case "uci":
+			send("id name " + engineName);
+			send("id author " + engineAuthor);
+			send("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MB + " min 1 max 4096");
+			send("option name Threads type spin default 1 min 1 max 256");
+			send("uciok");
+			break;
+		case "isready":
+			send("readyok");
+			break;
+		case "setoption":
+			stopSearch();
+			setOption(tokens);
+			break;
+		case "ucinewgame":
+			stopSearch();
+			ai.newGame();
+			break;
+		case "position":
+			stopSearch();
+			position(tokens);
+			break;
+		case "go":
+			stopSearch();
+			go(tokens);
+			break;
+		case "stop":
+			stopSearch();
+			break;
+		case "quit":
+			return false;
+		default:
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * setoption name <name> value <value>
+	 */
+	private void setOption(String[] tokens) {
+		if (tokens.length < 5 || !tokens[1].equals("name") || !tokens[3].equals("value")) {
+			return;
+		}
+		try {
+			int value = Integer.parseInt(tokens[4]);
+			if (tokens[2].equalsIgnoreCase("Hash")) {
+				hashSizeMB = Math.max(1, value);
+				// shut down the helper threads of the old ai
+				ai.setThreads(1);
+				ai = new ChessAI(true, hashSizeMB, numThreads);
+				ai.setSearchListener(this::sendInfo);
+			} else if (tokens[2].equalsIgnoreCase("Threads")) {
+				numThreads = Math.max(1, value);
+				ai.setThreads(numThreads);
+			}
+		} catch (NumberFormatException e) {
+			// ignore options with invalid values
+		}
+	}
+
+	/**
+	 * position [startpos | fen <fen>] [moves <move1> ... <movei>]
+	 */
+	private void position(String[] tokens) {
+		int index = 1;
+		String startPosition;
+		if (tokens.length > 1 && tokens[1].equals("startpos")) {
+			startPosition = FenUtility.startFen;
+			index = 2;
+		} else if (tokens.length > 1 && tokens[1].equals("fen")) {
+			StringBuilder fen = new StringBuilder();
+			index = 2;
+			while (index < tokens.length && !tokens[index].equals("moves")) {
+				fen.append(tokens[index]).append(' ');
+				index++;
+			}
+			startPosition = fen.toString().trim();
+		} else {
+			return;
+		}
+
+		List<String> moves = new ArrayList<String>();
+		if (index < tokens.length && tokens[index].equals("moves")) {
+			for (index++; index < tokens.length; index++) {
+				moves.add(tokens[index]);
+			}
+		}
+
+		// only play the new moves if the position continues from the last one, otherwise start over
+		boolean continuesCurrentPosition = startPosition.equals(currentStartPosition)
+				&& moves.size() >= currentMoves.size()
+				&& moves.subList(0, currentMoves.size()).equals(currentMoves);
+		if (!continuesCurrentPosition) {
+			board.LoadPosition(startPosition);
+			currentStartPosition = startPosition;
+			currentMoves.clear();
+		}
+		for (int i = currentMoves.size(); i < moves.size(); i++) {
+			int move = parseMove(moves.get(i));
+			if (move == Move.InvalidMoveValue) {
+				// stop at the first illegal move, the board stays at the position before it
+				break;
+			}
+			board.MakeMove(new Move((short) move));
+			currentMoves.add(moves.get(i));
+		}
+	}
+
+	/**
+	 * go [depth <d>] [movetime <ms>] [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [nodes <n>] [infinite]
+	 * starts the search on a new thread so stop can still be read while it runs
+	 */
+	private void go(String[] tokens) {
+		SearchLimits limits = new SearchLimits();
+		try {
+			for (int i = 1; i < tokens.length; i++) {
+				switch (tokens[i]) {
+				case "depth":
+					limits.depth = Integer.parseInt(tokens[++i]);
+					break;
+				case "movetime":
+					limits.moveTime = Long.parseLong(tokens[++i]);
+					break;
+				case "wtime":
+					limits.whiteTime = Long.parseLong(tokens[++i]);
+					break;
+				case "btime":
+					limits.blackTime = Long.parseLong(tokens[++i]);
+					break;
+				case "winc":
+					limits.whiteIncrement = Long.parseLong(tokens[++i]);
+					break;
+				case "binc":
+					limits.blackIncrement = Long.parseLong(tokens[++i]);
+					break;
+				case "movestogo":
+					limits.movesToGo = Integer.parseInt(tokens[++i]);
+					break;
+				case "nodes":
+					limits.nodes = Long.parseLong(tokens[++i]);
+					break;
+				case "infinite":
+					limits.infinite = true;
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			// search with the limits read so far
+		}
+
+		stopRequested = false;
+		searchThread = new Thread(() -> {
+			Move bestMove = ai.getBestMove(board, limits);
+			// the protocol doesn't allow bestmove before stop in an infinite search, even if the search has ended
+			while (limits.infinite && !stopRequested) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			send("bestmove " + moveToString(bestMove.getValue()));
+		}, "UCI search");
+		searchThread.start();
+	}
+
+	/**
+	 * stops the current search (if there is one) and waits for it to send its best move.
+	 * The stop is repeated until the search thread ends in case it arrives before the search has started.
+	 */
+	private void stopSearch() {
+		if (searchThread == null) {
+			return;
+		}
+		stopRequested = true;
+		try {
+			while (searchThread.isAlive()) {
+				ai.stopSearch();
+				searchThread.join(10);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+	}
+
+	private void sendInfo(int depth, int eval, long nodes, long time, Move bestMove, int[] principalVariation) {
+		long nodesPerSecond = nodes * 1000 / Math.max(1, time);
+		String score = (ChessAI.isMateScore(eval)) ? "mate " + ChessAI.mateInMoves(eval) : "cp " + eval;
+		send("info depth " + depth + " score " + score + " nodes " + nodes + " nps " + nodesPerSecond
+				+ " hashfull " + ai.getTranspositionTable().hashFull() + " time " + time
+				+ " pv " + ChessAI.principalVariationString(principalVariation));
+	}
+
+	private static synchronized void send(String message) {
+		System.out.println(message);
+		System.out.flush();
+	}
+
+	/**
+	 * @param moveName move in long algebraic notation, e.g. e2e4 or e7e8q
+	 * @return the matching legal move on the current board or Move.InvalidMoveValue if there is none
+	 */
+	int parseMove(String moveName) {
+		if (moveName.length() < 4) {
+			return Move.InvalidMoveValue;
+		}
+		int numMoves = moveGenerator.generateMoves(board, legalMoves);
+		for (int i = 0; i < numMoves; i++) {
+			if (moveToString(legalMoves[i]).equals(moveName)) {
+				return legalMoves[i];
+			}
+		}
+		return Move.InvalidMoveValue;
+	}
+
+	/**
+	 * @param move 16 bit move value
+	 * @return the move in long algebraic notation, 0000 for an invalid move
+	 */
+	static String moveToString(int move) {
+		if (move == Move.InvalidMoveValue) {
+			return "0000";
+		}
+		String name = BoardRepresentation.SquareNameFromIndex(Move.getStartSquare(move))
+				+ BoardRepresentation.SquareNameFromIndex(Move.getTargetSquare(move));
+		switch (Move.getMoveFlag(move)) {
+		case Move.Flag.PromoteToQueen:
+			return name + "q";
+		case Move.Flag.PromoteToRook:
+			return name + "r";
+		case Move.Flag.PromoteToBishop:
+			return name + "b";
+		case Move.Flag.PromoteToKnight:
+			return name + "n";
+		default:
+			return name;
+		}
+	}
+}
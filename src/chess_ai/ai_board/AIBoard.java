@@ -1,7 +1,5 @@
 package chess_ai.ai_board;
 
-import java.util.Stack;
-
 import chess_ai.ai_board.Piece;
 /**
  * this class was originally written by SebLague in C# and converted to Java by
@@ -32,18 +30,43 @@ public class AIBoard {
 	// Bits 4-7 store file of ep square (starting at 1, so 0 = no ep square)
 	// Bits 8-13 captured piece
 	// Bits 14-... fifty mover counter
-	Stack<Integer> gameStateHistory;
+	// History is kept in fixed size primitive arrays used as ring buffers so making and unmaking moves never
+	// allocates or boxes. The capacity is more than the moves of any real game plus the deepest search,
+	// and since only the most recent entries are ever read, wrapping around in a longer game is harmless.
+	public static final int HistoryCapacity = 2048; // must be a power of two
+	static final int historyMask = HistoryCapacity - 1;
+	int[] gameStateHistory;
+	int gameStateHistoryCount;
 	public int currentGameState;
 
 	public int plyCount; // Total plies played in game
 	public int fiftyMoveCounter; // Num ply since last pawn move or capture
 
 	public long ZobristKey;
-	/// List of zobrist keys 
-	public Stack<Long> RepetitionPositionHistory;
+	// Zobrist key of the pawns only, used by the pawn hash table
+	public long PawnKey;
+	/// Zobrist keys of the positions since the last pawn move or capture (oldest first), ending with the current position.
+	/// Positions reached in search are added as well and removed again when the move is unmade.
+	public long[] RepetitionPositionHistory;
+	public int RepetitionPositionHistoryCount;
 
 	public int[] KingSquare; // index of square of white and black king
 
+	// Bitboards of the squares occupied by each colour (indexed by colour index) and by any piece
+	public long[] colourBitboards;
+	public long allPiecesBitboard;
+	// Bitboards of the squares occupied by each piece type of each colour
+	// indexed the same way as allPieceLists: colourIndex * 8 + pieceType (see GetPieceBitboard)
+	public long[] pieceBitboards;
+
+	// Piece-square table scores (material included) of white minus black, kept up to date by MakeMove/UnmakeMove
+	public int middlegameScore;
+	public int endgameScore;
+	// Sum of PieceSquareTable.Phase of every piece on the board, MaxPhase at the start of the game
+	public int gamePhase;
+	// Created the first time the board evaluates a position (see GetPawnHashTable)
+	PawnHashTable pawnHashTable;
+
 	public PieceList[] rooks;
 	public PieceList[] bishops;
 	public PieceList[] queens;
@@ -67,38 +90,186 @@ public class AIBoard {
 	PieceList GetPieceList (int pieceType, int colourIndex) {
 		return allPieceLists[colourIndex * 8 + pieceType];
 	}
+
+	public long GetPieceBitboard (int pieceType, int colourIndex) {
+		return pieceBitboards[colourIndex * 8 + pieceType];
+	}
+
+	// Rooks and queens
+	public long GetOrthogonalSliders (int colourIndex) {
+		return pieceBitboards[colourIndex * 8 + Piece.Rook] | pieceBitboards[colourIndex * 8 + Piece.Queen];
+	}
+
+	// Bishops and queens
+	public long GetDiagonalSliders (int colourIndex) {
+		return pieceBitboards[colourIndex * 8 + Piece.Bishop] | pieceBitboards[colourIndex * 8 + Piece.Queen];
+	}
+
+	// True if the current position occurred before, since the last pawn move or capture. Only positions with
+	// the same side to move are compared and the position two plies back can't be the same.
+	public boolean IsRepetition () {
+		int lastIndex = RepetitionPositionHistoryCount - 1;
+		int maxPliesBack = Math.min (fiftyMoveCounter, lastIndex);
+		for (int pliesBack = 4; pliesBack <= maxPliesBack; pliesBack += 2) {
+			if (RepetitionPositionHistory[(lastIndex - pliesBack) & historyMask] == ZobristKey) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// True if the king of the side to move is attacked
+	public boolean InCheck () {
+		return (AttackersTo (KingSquare[ColourToMoveIndex], allPiecesBitboard) & colourBitboards[1 - ColourToMoveIndex]) != 0;
+	}
+
+	// True if the side has any piece other than pawns and its king
+	public boolean HasNonPawnMaterial (int colourIndex) {
+		return (colourBitboards[colourIndex] & ~pieceBitboards[colourIndex * 8 + Piece.Pawn] & ~pieceBitboards[colourIndex * 8 + Piece.King]) != 0;
+	}
 	
 	public static int pawnValue = 100;
 	public static int knightValue = 300;
 	public static int bishopValue = 300;
 	public static int rookValue = 500;
 	public static int queenValue = 900;
+
+	// Piece values used by StaticExchangeEvaluation, indexed by piece type
+	static final int[] exchangeValues = { 0, 20000, 100, 300, 0, 300, 500, 900 };
+	// Order in which StaticExchangeEvaluation brings in attackers, least valuable first
+	static final int[] exchangeAttackerOrder = { Piece.Pawn, Piece.Knight, Piece.Bishop, Piece.Rook, Piece.Queen, Piece.King };
+	// Material balance after each capture of an exchange (at most one capture per piece on the board)
+	final int[] exchangeGains = new int[33];
+
+	// Pieces of both colours that attack the square. Sliding pieces are blocked by the pieces in occupied.
+	public long AttackersTo (int square, long occupied) {
+		long knights = pieceBitboards[WhiteIndex * 8 + Piece.Knight] | pieceBitboards[BlackIndex * 8 + Piece.Knight];
+		long kings = pieceBitboards[WhiteIndex * 8 + Piece.King] | pieceBitboards[BlackIndex * 8 + Piece.King];
+		return (PrecomputedMoveData.pawnAttackBitboards[square][BlackIndex] & pieceBitboards[WhiteIndex * 8 + Piece.Pawn])
+				| (PrecomputedMoveData.pawnAttackBitboards[square][WhiteIndex] & pieceBitboards[BlackIndex * 8 + Piece.Pawn])
+				| (PrecomputedMoveData.knightAttackBitboards[square] & knights)
+				| (PrecomputedMoveData.kingAttackBitboards[square] & kings)
+				| (Magic.GetRookAttacks (square, occupied) & (GetOrthogonalSliders (WhiteIndex) | GetOrthogonalSliders (BlackIndex)))
+				| (Magic.GetBishopAttacks (square, occupied) & (GetDiagonalSliders (WhiteIndex) | GetDiagonalSliders (BlackIndex)));
+	}
+
+	/**
+	 * Static exchange evaluation: the material the side to move wins (or loses, if negative) by making the
+	 * capture and then both sides recapturing on the target square with their least valuable attacker,
+	 * each side stopping as soon as carrying on would lose material. Pins and checks are ignored.
+	 */
+	public int StaticExchangeEvaluation (int move) {
+		int from = Move.getStartSquare (move);
+		int to = Move.getTargetSquare (move);
+		int[] gain = exchangeGains;
+		long occupied = allPiecesBitboard;
+		int pieceOnSquare = Piece.PieceType (Square[from]);
+
+		gain[0] = exchangeValues[Piece.PieceType (Square[to])];
+		if (Move.getMoveFlag (move) == Move.Flag.EnPassantCapture) {
+			gain[0] = exchangeValues[Piece.Pawn];
+			occupied ^= 1L << (to + ((WhiteToMove) ? -8 : 8));
+		} else if (Move.isPromotion (move)) {
+			pieceOnSquare = Move.getPromotionPieceType (move);
+			gain[0] += exchangeValues[pieceOnSquare] - exchangeValues[Piece.Pawn];
+		}
+
+		long diagonalSliders = GetDiagonalSliders (WhiteIndex) | GetDiagonalSliders (BlackIndex);
+		long orthogonalSliders = GetOrthogonalSliders (WhiteIndex) | GetOrthogonalSliders (BlackIndex);
+		long attackers = AttackersTo (to, occupied);
+		long fromBit = 1L << from;
+		int side = ColourToMoveIndex;
+		int depth = 0;
+		while (true) {
+			depth++;
+			// gain if the piece that just captured is captured in turn
+			gain[depth] = exchangeValues[pieceOnSquare] - gain[depth - 1];
+			occupied ^= fromBit;
+			// sliders behind the piece that moved can now reach the square
+			attackers |= (Magic.GetBishopAttacks (to, occupied) & diagonalSliders) | (Magic.GetRookAttacks (to, occupied) & orthogonalSliders);
+			attackers &= occupied;
+			side = 1 - side;
+
+			long sideAttackers = attackers & colourBitboards[side];
+			fromBit = 0;
+			for (int pieceType : exchangeAttackerOrder) {
+				long pieces = sideAttackers & pieceBitboards[side * 8 + pieceType];
+				if (pieces != 0) {
+					fromBit = pieces & -pieces;
+					pieceOnSquare = pieceType;
+					break;
+				}
+			}
+			// the king can't capture onto a square the opponent still attacks
+			if (fromBit == 0 || (pieceOnSquare == Piece.King && (attackers & colourBitboards[1 - side]) != 0)) {
+				break;
+			}
+		}
+		while (--depth > 0) {
+			gain[depth - 1] = -Math.max (-gain[depth - 1], gain[depth]);
+		}
+		return gain[0];
+	}
 	
     /**
      * Written by Graham Young on 11/13/22
      * method for determining the current evaluation of the board
-     * currently just checks to see if which player has the most material
-     * @return int that is positive if white is better negative if black is better and 0
-     * if the position is even
-     * @TODO make the function better by adding other parameters to check.
+     * uses the piece-square table scores, blending the middlegame and endgame scores by how much material
+     * is left (tapered evaluation). The scores are updated incrementally so this doesn't loop over the pieces.
+     * @return int that is positive if the side to move is better negative if the opponent is better and 0
+     * if the position is even (negamax search needs the score from the side to move's point of view)
      * 
      */
     public int evaluate() {
-    	int whiteEval = countMaterial(WhiteIndex);
-    	int blackEval = countMaterial(BlackIndex);
-    	return whiteEval - blackEval;
+    	long whitePawns = pieceBitboards[WhiteIndex * 8 + Piece.Pawn];
+    	long blackPawns = pieceBitboards[BlackIndex * 8 + Piece.Pawn];
+    	PawnHashTable pawnTable = GetPawnHashTable();
+    	int pawnEntry = pawnTable.Probe(PawnKey, whitePawns, blackPawns);
+
+    	int middlegame = middlegameScore + pawnTable.GetMiddlegameScore(pawnEntry)
+    			+ PawnStructure.KingShield(whitePawns, blackPawns, KingSquare[WhiteIndex], KingSquare[BlackIndex]);
+    	int endgame = endgameScore + pawnTable.GetEndgameScore(pawnEntry);
+
+    	// early promotions can push the phase past the starting value
+    	int middlegamePhase = Math.min(gamePhase, PieceSquareTable.MaxPhase);
+    	int eval = (middlegame * middlegamePhase + endgame * (PieceSquareTable.MaxPhase - middlegamePhase)) / PieceSquareTable.MaxPhase;
+    	return (WhiteToMove) ? eval : -eval;
     }
-    
-    
-    int countMaterial(int colourIndex) {
-		int material = 0;
-		material += this.pawns[colourIndex].size() * pawnValue;
-		material += this.knights[colourIndex].size() * knightValue;
-		material += this.bishops[colourIndex].size() * bishopValue;
-		material += this.rooks[colourIndex].size() * rookValue;
-		material += this.queens[colourIndex].size() * queenValue;
-
-		return material;
+
+    /**
+     * @return the table caching this board's pawn structure evaluations (for its hit rate statistics)
+     */
+    public PawnHashTable GetPawnHashTable() {
+    	if (pawnHashTable == null) {
+    		pawnHashTable = new PawnHashTable();
+    	}
+    	return pawnHashTable;
+    }
+
+	void AddPieceScore (int colourIndex, int pieceType, int square) {
+		middlegameScore += PieceSquareTable.Middlegame[colourIndex * 8 + pieceType][square];
+		endgameScore += PieceSquareTable.Endgame[colourIndex * 8 + pieceType][square];
+		gamePhase += PieceSquareTable.Phase[pieceType];
+	}
+
+	void RemovePieceScore (int colourIndex, int pieceType, int square) {
+		middlegameScore -= PieceSquareTable.Middlegame[colourIndex * 8 + pieceType][square];
+		endgameScore -= PieceSquareTable.Endgame[colourIndex * 8 + pieceType][square];
+		gamePhase -= PieceSquareTable.Phase[pieceType];
+	}
+
+	// Calculates the piece-square table scores from scratch. Like the zobrist key this should only be used after
+	// setting the board from a fen, moves update the scores incrementally.
+	void CalculatePieceSquareScores () {
+		middlegameScore = 0;
+		endgameScore = 0;
+		gamePhase = 0;
+		for (int squareIndex = 0; squareIndex < 64; squareIndex++) {
+			int piece = Square[squareIndex];
+			if (piece != Piece.None) {
+				AddPieceScore((Piece.IsColour (piece, Piece.White)) ? WhiteIndex : BlackIndex, Piece.PieceType (piece), squareIndex);
+			}
+		}
 	}
 
     public void MakeMove(Move move) {
@@ -108,32 +279,49 @@ public class AIBoard {
     public void UnmakeMove(Move move) {
     	UnmakeMove(move, false);
     }
+	public void MakeMove (Move move, boolean inSearch) {
+		MakeMove(move.getValue(), inSearch);
+	}
+
+	public void UnmakeMove (Move move, boolean inSearch) {
+		UnmakeMove(move.getValue(), inSearch);
+	}
+
 	// Make a move on the board
+	// The move is a 16 bit move value (see Move)
 	// The inSearch parameter controls whether this move should be recorded in the game history (for detecting three-fold repetition)
-	public void MakeMove (Move move, boolean inSearch) {
+	public void MakeMove (int move, boolean inSearch) {
 		int oldEnPassantFile = (currentGameState >> 4) & 15;
 		int originalCastleState = currentGameState & 15;
 		int newCastleState = originalCastleState;
 		currentGameState = 0;
 
 		int opponentColourIndex = 1 - ColourToMoveIndex;
-		int moveFrom = move.getStartSquare();
-		int moveTo = move.getTargetSquare();
+		int moveFrom = Move.getStartSquare(move);
+		int moveTo = Move.getTargetSquare(move);
 
 		int capturedPieceType = Piece.PieceType (Square[moveTo]);
 		int movePiece = Square[moveFrom];
 		int movePieceType = Piece.PieceType (movePiece);
 
-		int moveFlag = move.getMoveFlag();
-		boolean isPromotion = move.isPromotion();
+		int moveFlag = Move.getMoveFlag(move);
+		boolean isPromotion = Move.isPromotion(move);
 		boolean isEnPassant = moveFlag == Move.Flag.EnPassantCapture;
 
 		// Handle captures
 		currentGameState |= (short) (capturedPieceType << 8);
 		if (capturedPieceType != 0 && !isEnPassant) {
 			ZobristKey ^= Zobrist.piecesArray[capturedPieceType][opponentColourIndex][moveTo];
+			if (capturedPieceType == Piece.Pawn) {
+				PawnKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][moveTo];
+			}
+			RemovePieceScore (opponentColourIndex, capturedPieceType, moveTo);
 			GetPieceList (capturedPieceType, opponentColourIndex).removePieceAtSquare (moveTo);
+			colourBitboards[opponentColourIndex] ^= 1L << moveTo;
+			pieceBitboards[opponentColourIndex * 8 + capturedPieceType] ^= 1L << moveTo;
 		}
+		colourBitboards[ColourToMoveIndex] ^= (1L << moveFrom) | (1L << moveTo);
+		pieceBitboards[ColourToMoveIndex * 8 + movePieceType] ^= 1L << moveFrom;
 
 		// Move pieces in piece lists
 		if (movePieceType == Piece.King) {
@@ -177,7 +365,11 @@ public class AIBoard {
 					currentGameState |= (short) (Square[epPawnSquare] << 8); // add pawn as capture type
 					Square[epPawnSquare] = 0; // clear ep capture square
 					pawns[opponentColourIndex].removePieceAtSquare (epPawnSquare);
+					colourBitboards[opponentColourIndex] ^= 1L << epPawnSquare;
+					pieceBitboards[opponentColourIndex * 8 + Piece.Pawn] ^= 1L << epPawnSquare;
 					ZobristKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][epPawnSquare];
+					PawnKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][epPawnSquare];
+					RemovePieceScore (opponentColourIndex, Piece.Pawn, epPawnSquare);
 					break;
 				case Move.Flag.Castling:
 					boolean kingside = moveTo == BoardRepresentation.g1 || moveTo == BoardRepresentation.g8;
@@ -188,8 +380,12 @@ public class AIBoard {
 					Square[castlingRookToIndex] = Piece.Rook | ColourToMove;
 
 					rooks[ColourToMoveIndex].movePiece (castlingRookFromIndex, castlingRookToIndex);
+					colourBitboards[ColourToMoveIndex] ^= (1L << castlingRookFromIndex) | (1L << castlingRookToIndex);
+					pieceBitboards[ColourToMoveIndex * 8 + Piece.Rook] ^= (1L << castlingRookFromIndex) | (1L << castlingRookToIndex);
 					ZobristKey ^= Zobrist.piecesArray[Piece.Rook][ColourToMoveIndex][castlingRookFromIndex];
 					ZobristKey ^= Zobrist.piecesArray[Piece.Rook][ColourToMoveIndex][castlingRookToIndex];
+					RemovePieceScore (ColourToMoveIndex, Piece.Rook, castlingRookFromIndex);
+					AddPieceScore (ColourToMoveIndex, Piece.Rook, castlingRookToIndex);
 					break;
 			}
 		}
@@ -197,6 +393,8 @@ public class AIBoard {
 		// Update the board representation:
 		Square[moveTo] = pieceOnTargetSquare;
 		Square[moveFrom] = 0;
+		pieceBitboards[ColourToMoveIndex * 8 + Piece.PieceType(pieceOnTargetSquare)] ^= 1L << moveTo;
+		allPiecesBitboard = colourBitboards[WhiteIndex] | colourBitboards[BlackIndex];
 
 		// Pawn has moved two forwards, mark file with en-passant flag
 		if (moveFlag == Move.Flag.PawnTwoForward) {
@@ -223,6 +421,14 @@ public class AIBoard {
 		ZobristKey ^= Zobrist.sideToMove;
 		ZobristKey ^= Zobrist.piecesArray[movePieceType][ColourToMoveIndex][moveFrom];
 		ZobristKey ^= Zobrist.piecesArray[Piece.PieceType(pieceOnTargetSquare)][ColourToMoveIndex][moveTo];
+		RemovePieceScore (ColourToMoveIndex, movePieceType, moveFrom);
+		AddPieceScore (ColourToMoveIndex, Piece.PieceType(pieceOnTargetSquare), moveTo);
+		if (movePieceType == Piece.Pawn) {
+			PawnKey ^= Zobrist.piecesArray[Piece.Pawn][ColourToMoveIndex][moveFrom];
+			if (!isPromotion) {
+				PawnKey ^= Zobrist.piecesArray[Piece.Pawn][ColourToMoveIndex][moveTo];
+			}
+		}
 
 		if (oldEnPassantFile != 0)
 			ZobristKey ^= Zobrist.enPassantFile[oldEnPassantFile];
@@ -231,9 +437,12 @@ public class AIBoard {
 			ZobristKey ^= Zobrist.castlingRights[originalCastleState]; // remove old castling rights state
 			ZobristKey ^= Zobrist.castlingRights[newCastleState]; // add new castling rights state
 		}
+		// A pawn move or capture restarts the fifty move counter, no position before it can be repeated
+		boolean irreversible = movePieceType == Piece.Pawn || capturedPieceType != Piece.None;
+		fiftyMoveCounter = (irreversible) ? 0 : fiftyMoveCounter + 1;
 		currentGameState |= newCastleState;
-		currentGameState |= (int) fiftyMoveCounter << 14;
-		gameStateHistory.push(currentGameState);
+		currentGameState |= fiftyMoveCounter << 14;
+		gameStateHistory[gameStateHistoryCount++ & historyMask] = currentGameState;
 
 		// Change side to move
 		WhiteToMove = !WhiteToMove;
@@ -241,21 +450,57 @@ public class AIBoard {
 		OpponentColour = (WhiteToMove) ? Piece.Black : Piece.White;
 		ColourToMoveIndex = 1 - ColourToMoveIndex;
 		plyCount++;
-		fiftyMoveCounter++;
-
-		if (!inSearch) {
-			if (movePieceType == Piece.Pawn || capturedPieceType != Piece.None) {
-				RepetitionPositionHistory.clear ();
-				fiftyMoveCounter = 0;
-			} else {
-				RepetitionPositionHistory.push(ZobristKey);
-			}
+
+		// Outside of search the positions before an irreversible move are dropped, in search they are kept
+		// so unmaking the move gets back to the same history (IsRepetition only looks back fiftyMoveCounter plies)
+		if (!inSearch && irreversible) {
+			RepetitionPositionHistoryCount = 0;
 		}
+		RepetitionPositionHistory[RepetitionPositionHistoryCount++ & historyMask] = ZobristKey;
+
+	}
+
+	// Pass the turn to the opponent without moving a piece (used by the search's null move pruning).
+	// Castling rights stay the same and any en passant capture is no longer possible. The fifty move
+	// counter restarts so positions before the null move don't count as repetitions.
+	public void MakeNullMove () {
+		int oldEnPassantFile = (currentGameState >> 4) & 15;
+		if (oldEnPassantFile != 0)
+			ZobristKey ^= Zobrist.enPassantFile[oldEnPassantFile];
+		ZobristKey ^= Zobrist.sideToMove;
+
+		fiftyMoveCounter = 0;
+		currentGameState = currentGameState & 0b1111;
+		gameStateHistory[gameStateHistoryCount++ & historyMask] = currentGameState;
+
+		WhiteToMove = !WhiteToMove;
+		ColourToMove = (WhiteToMove) ? Piece.White : Piece.Black;
+		OpponentColour = (WhiteToMove) ? Piece.Black : Piece.White;
+		ColourToMoveIndex = 1 - ColourToMoveIndex;
+		plyCount++;
+		RepetitionPositionHistory[RepetitionPositionHistoryCount++ & historyMask] = ZobristKey;
+	}
 
+	// Undo a null move made with MakeNullMove
+	public void UnmakeNullMove () {
+		WhiteToMove = !WhiteToMove;
+		ColourToMove = (WhiteToMove) ? Piece.White : Piece.Black;
+		OpponentColour = (WhiteToMove) ? Piece.Black : Piece.White;
+		ColourToMoveIndex = 1 - ColourToMoveIndex;
+		plyCount--;
+		RepetitionPositionHistoryCount--;
+
+		ZobristKey ^= Zobrist.sideToMove;
+		gameStateHistoryCount--;
+		currentGameState = gameStateHistory[(gameStateHistoryCount - 1) & historyMask];
+		fiftyMoveCounter = currentGameState >>> 14;
+		int enPassantFile = (currentGameState >> 4) & 15;
+		if (enPassantFile != 0)
+			ZobristKey ^= Zobrist.enPassantFile[enPassantFile];
 	}
 
 	// Undo a move previously made on the board
-	public void UnmakeMove(Move move, boolean inSearch) {
+	public void UnmakeMove(int move, boolean inSearch) {
 
 		//int opponentColour = ColourToMove;
 		int opponentColourIndex = ColourToMoveIndex;
@@ -270,11 +515,11 @@ public class AIBoard {
 		int capturedPieceType = ((int) currentGameState >> 8) & 63;
 		int capturedPiece = (capturedPieceType == 0) ? 0 : capturedPieceType | OpponentColour;
 
-		int movedFrom = move.getStartSquare();
-		int movedTo = move.getTargetSquare();
-		int moveFlags = move.getMoveFlag();
+		int movedFrom = Move.getStartSquare(move);
+		int movedTo = Move.getTargetSquare(move);
+		int moveFlags = Move.getMoveFlag(move);
 		boolean isEnPassant = moveFlags == Move.Flag.EnPassantCapture;
-		boolean isPromotion = move.isPromotion();
+		boolean isPromotion = Move.isPromotion(move);
 
 		int toSquarePieceType = Piece.PieceType (Square[movedTo]);
 		int movedPieceType = (isPromotion) ? Piece.Pawn : toSquarePieceType;
@@ -283,6 +528,14 @@ public class AIBoard {
 		ZobristKey ^= Zobrist.sideToMove;
 		ZobristKey ^= Zobrist.piecesArray[movedPieceType][ColourToMoveIndex][movedFrom]; // add piece back to square it moved from
 		ZobristKey ^= Zobrist.piecesArray[toSquarePieceType][ColourToMoveIndex][movedTo]; // remove piece from square it moved to
+		AddPieceScore (ColourToMoveIndex, movedPieceType, movedFrom);
+		RemovePieceScore (ColourToMoveIndex, toSquarePieceType, movedTo);
+		if (movedPieceType == Piece.Pawn) {
+			PawnKey ^= Zobrist.piecesArray[Piece.Pawn][ColourToMoveIndex][movedFrom];
+			if (!isPromotion) {
+				PawnKey ^= Zobrist.piecesArray[Piece.Pawn][ColourToMoveIndex][movedTo];
+			}
+		}
 
 		int oldEnPassantFile = (currentGameState >> 4) & 15;
 		if (oldEnPassantFile != 0)
@@ -291,8 +544,17 @@ public class AIBoard {
 		// ignore ep captures, handled later
 		if (capturedPieceType != 0 && !isEnPassant) {
 			ZobristKey ^= Zobrist.piecesArray[capturedPieceType][opponentColourIndex][movedTo];
+			if (capturedPieceType == Piece.Pawn) {
+				PawnKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][movedTo];
+			}
+			AddPieceScore (opponentColourIndex, capturedPieceType, movedTo);
 			GetPieceList (capturedPieceType, opponentColourIndex).addPieceAtSquare (movedTo);
+			colourBitboards[opponentColourIndex] ^= 1L << movedTo;
+			pieceBitboards[opponentColourIndex * 8 + capturedPieceType] ^= 1L << movedTo;
 		}
+		colourBitboards[ColourToMoveIndex] ^= (1L << movedFrom) | (1L << movedTo);
+		pieceBitboards[ColourToMoveIndex * 8 + movedPieceType] ^= 1L << movedFrom;
+		pieceBitboards[ColourToMoveIndex * 8 + toSquarePieceType] ^= 1L << movedTo;
 
 		// Update king index
 		if (movedPieceType == Piece.King) {
@@ -326,7 +588,11 @@ public class AIBoard {
 			Square[movedTo] = 0;
 			Square[epIndex] = (int) capturedPiece;
 			pawns[opponentColourIndex].addPieceAtSquare (epIndex);
+			colourBitboards[opponentColourIndex] ^= 1L << epIndex;
+			pieceBitboards[opponentColourIndex * 8 + Piece.Pawn] ^= 1L << epIndex;
 			ZobristKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][epIndex];
+			PawnKey ^= Zobrist.piecesArray[Piece.Pawn][opponentColourIndex][epIndex];
+			AddPieceScore (opponentColourIndex, Piece.Pawn, epIndex);
 		} else if (moveFlags == Move.Flag.Castling) { // castles: move rook back to starting square
 
 			boolean kingside = movedTo == 6 || movedTo == 62;
@@ -337,15 +603,20 @@ public class AIBoard {
 			Square[castlingRookFromIndex] = Piece.Rook | ColourToMove;
 
 			rooks[ColourToMoveIndex].movePiece (castlingRookToIndex, castlingRookFromIndex);
+			colourBitboards[ColourToMoveIndex] ^= (1L << castlingRookFromIndex) | (1L << castlingRookToIndex);
+			pieceBitboards[ColourToMoveIndex * 8 + Piece.Rook] ^= (1L << castlingRookFromIndex) | (1L << castlingRookToIndex);
 			ZobristKey ^= Zobrist.piecesArray[Piece.Rook][ColourToMoveIndex][castlingRookFromIndex];
 			ZobristKey ^= Zobrist.piecesArray[Piece.Rook][ColourToMoveIndex][castlingRookToIndex];
+			AddPieceScore (ColourToMoveIndex, Piece.Rook, castlingRookFromIndex);
+			RemovePieceScore (ColourToMoveIndex, Piece.Rook, castlingRookToIndex);
 
 		}
+		allPiecesBitboard = colourBitboards[WhiteIndex] | colourBitboards[BlackIndex];
 
-		gameStateHistory.pop(); // removes current state from history
-		currentGameState = gameStateHistory.peek(); // sets current state to previous state in history
+		gameStateHistoryCount--; // removes current state from history
+		currentGameState = gameStateHistory[(gameStateHistoryCount - 1) & historyMask]; // sets current state to previous state in history
 
-		fiftyMoveCounter = (int) (currentGameState & Integer.parseUnsignedInt("4294950912")) >> 14;
+		fiftyMoveCounter = currentGameState >>> 14;
 		int newEnPassantFile = (int) (currentGameState >> 4) & 15;
 		if (newEnPassantFile != 0)
 			ZobristKey ^= Zobrist.enPassantFile[newEnPassantFile];
@@ -358,12 +629,51 @@ public class AIBoard {
 
 		plyCount--;
 
-		if (!inSearch && RepetitionPositionHistory.size() > 0) {
-			RepetitionPositionHistory.pop();
+		if (RepetitionPositionHistoryCount > 0) {
+			RepetitionPositionHistoryCount--;
 		}
 
 	}
 
+	public AIBoard () {
+	}
+
+	// Creates an independent copy of another board (including its history), so the copy can
+	// be searched on another thread without affecting the original
+	public AIBoard (AIBoard other) {
+		Square = other.Square.clone();
+		WhiteToMove = other.WhiteToMove;
+		ColourToMove = other.ColourToMove;
+		OpponentColour = other.OpponentColour;
+		ColourToMoveIndex = other.ColourToMoveIndex;
+
+		gameStateHistory = other.gameStateHistory.clone();
+		gameStateHistoryCount = other.gameStateHistoryCount;
+		currentGameState = other.currentGameState;
+		plyCount = other.plyCount;
+		fiftyMoveCounter = other.fiftyMoveCounter;
+
+		ZobristKey = other.ZobristKey;
+		PawnKey = other.PawnKey;
+		middlegameScore = other.middlegameScore;
+		endgameScore = other.endgameScore;
+		gamePhase = other.gamePhase;
+		RepetitionPositionHistory = other.RepetitionPositionHistory.clone();
+		RepetitionPositionHistoryCount = other.RepetitionPositionHistoryCount;
+
+		KingSquare = other.KingSquare.clone();
+		colourBitboards = other.colourBitboards.clone();
+		allPiecesBitboard = other.allPiecesBitboard;
+		pieceBitboards = other.pieceBitboards.clone();
+
+		knights = new PieceList[] { new PieceList(other.knights[WhiteIndex]), new PieceList(other.knights[BlackIndex]) };
+		pawns = new PieceList[] { new PieceList(other.pawns[WhiteIndex]), new PieceList(other.pawns[BlackIndex]) };
+		rooks = new PieceList[] { new PieceList(other.rooks[WhiteIndex]), new PieceList(other.rooks[BlackIndex]) };
+		bishops = new PieceList[] { new PieceList(other.bishops[WhiteIndex]), new PieceList(other.bishops[BlackIndex]) };
+		queens = new PieceList[] { new PieceList(other.queens[WhiteIndex]), new PieceList(other.queens[BlackIndex]) };
+		CreateAllPieceLists();
+	}
+
 	// Load the starting position
 	public void LoadStartPosition () {
 		LoadPosition (FenUtility.startFen);
@@ -382,6 +692,8 @@ public class AIBoard {
 			if (piece != Piece.None) {
 				int pieceType = Piece.PieceType (piece);
 				int pieceColourIndex = (Piece.IsColour (piece, Piece.White)) ? WhiteIndex : BlackIndex;
+				colourBitboards[pieceColourIndex] |= 1L << squareIndex;
+				pieceBitboards[pieceColourIndex * 8 + pieceType] |= 1L << squareIndex;
 				if (Piece.IsSlidingPiece (piece)) {
 					if (pieceType == Piece.Queen) {
 						queens[pieceColourIndex].addPieceAtSquare (squareIndex);
@@ -400,6 +712,8 @@ public class AIBoard {
 			}
 		}
 
+		allPiecesBitboard = colourBitboards[WhiteIndex] | colourBitboards[BlackIndex];
+
 		// Side to move
 		WhiteToMove = loadedPosition.whiteToMove;
 		ColourToMove = (WhiteToMove) ? Piece.White : Piece.Black;
@@ -410,22 +724,32 @@ public class AIBoard {
 		int whiteCastle = ((loadedPosition.whiteCastleKingside) ? 1 << 0 : 0) | ((loadedPosition.whiteCastleQueenside) ? 1 << 1 : 0);
 		int blackCastle = ((loadedPosition.blackCastleKingside) ? 1 << 2 : 0) | ((loadedPosition.blackCastleQueenside) ? 1 << 3 : 0);
 		int epState = loadedPosition.epFile << 4;
-		short initialGameState = (short) (whiteCastle | blackCastle | epState);
-		gameStateHistory.push(Short.toUnsignedInt(initialGameState));
+		fiftyMoveCounter = loadedPosition.fiftyMovePlyCount;
+		int initialGameState = whiteCastle | blackCastle | epState | (fiftyMoveCounter << 14);
+		gameStateHistory[gameStateHistoryCount++ & historyMask] = initialGameState;
 		currentGameState = initialGameState;
 		plyCount = loadedPosition.plyCount;
 
 		// Initialize zobrist key
 		ZobristKey = Zobrist.CalculateZobristKey (this);
+		RepetitionPositionHistory[RepetitionPositionHistoryCount++ & historyMask] = ZobristKey;
+		PawnKey = Zobrist.CalculatePawnKey (this);
+		CalculatePieceSquareScores ();
 	}
 
 	void Initialize () {
 		Square = new int[64];
 		KingSquare = new int[2];
+		colourBitboards = new long[2];
+		allPiecesBitboard = 0;
+		pieceBitboards = new long[16];
 
-		gameStateHistory = new Stack<Integer> ();
+		gameStateHistory = new int[HistoryCapacity];
+		gameStateHistoryCount = 0;
 		ZobristKey = 0;
-		RepetitionPositionHistory = new Stack<Long> ();
+		PawnKey = 0;
+		RepetitionPositionHistory = new long[HistoryCapacity];
+		RepetitionPositionHistoryCount = 0;
 		plyCount = 0;
 		fiftyMoveCounter = 0;
 
@@ -434,6 +758,10 @@ public class AIBoard {
 		rooks = new PieceList[] { new PieceList(10), new PieceList(10) };
 		bishops = new PieceList[] { new PieceList(10), new PieceList(10) };
 		queens = new PieceList[] { new PieceList(9), new PieceList(9) };
+		CreateAllPieceLists();
+	}
+
+	void CreateAllPieceLists () {
 		PieceList emptyList = new PieceList (0);
 		allPieceLists = new PieceList[] {
 			emptyList,
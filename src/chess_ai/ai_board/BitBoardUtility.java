@@ -12,7 +12,35 @@ package chess_ai.ai_board;
  *
  */
 public class BitBoardUtility {
+	public static final long FileA = 0x0101010101010101L;
+	public static final long FileH = FileA << 7;
+	public static final long Rank1 = 0xFFL;
+	public static final long Rank8 = Rank1 << 56;
+
 	public static boolean ContainsSquare (long bitboard, int square) {
 		return ((bitboard >> square) & 1) != 0;
 	}
+
+	// Index of the lowest set square (64 if the bitboard is empty)
+	public static int LowestSquare (long bitboard) {
+		return Long.numberOfTrailingZeros(bitboard);
+	}
+
+	// Squares attacked by all the given pawns at once
+	public static long PawnAttacks (long pawns, boolean white) {
+		if (white) {
+			return ((pawns << 7) & ~FileH) | ((pawns << 9) & ~FileA);
+		}
+		return ((pawns >>> 9) & ~FileH) | ((pawns >>> 7) & ~FileA);
+	}
+
+	// Squares attacked by all the given knights at once
+	public static long KnightAttacks (long knights) {
+		long attacks = 0;
+		while (knights != 0) {
+			attacks |= PrecomputedMoveData.knightAttackBitboards[Long.numberOfTrailingZeros(knights)];
+			knights &= knights - 1;
+		}
+		return attacks;
+	}
 }
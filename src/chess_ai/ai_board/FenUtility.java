@@ -79,7 +79,7 @@ public class FenUtility {
 
 		// Half-move clock
 		if (sections.length > 4) {
-			Integer.parseInt ("" + sections[4]);
+			loadedPositionInfo.fiftyMovePlyCount = Integer.parseInt ("" + sections[4]);
 		}
 		return loadedPositionInfo;
 	}
@@ -9,6 +9,7 @@ public class LoadedPositionInfo {
 	public int epFile;
 	public boolean whiteToMove;
 	public int plyCount;
+	public int fiftyMovePlyCount;
 
 	public LoadedPositionInfo () {
 		squares = new int[64];
@@ -0,0 +1,106 @@
+package chess_ai.ai_board;
+
+/**
+ * Magic bitboard lookup tables for sliding piece attacks.
+ *
+ * For every square the relevant blocker squares (the rook/bishop movement mask without the board edge)
+ * are multiplied by a magic number and shifted, which maps every possible blocker arrangement to a unique
+ * index in that square's attack table. Getting the attacks of a sliding piece is then a single
+ * multiply, shift and array lookup instead of walking every ray square by square.
+ *
+ * The magic numbers are stored in PrecomputedMagics, the attack tables are filled in when the class is loaded.
+ *
+ * @author Graham Young
+ *
+ */
+public class Magic {
+
+	public static final long[] rookMask = new long[64];
+	public static final long[] bishopMask = new long[64];
+
+	static final long[] rookMagics = PrecomputedMagics.RookMagics;
+	static final long[] bishopMagics = PrecomputedMagics.BishopMagics;
+	static final int[] rookShifts = new int[64];
+	static final int[] bishopShifts = new int[64];
+
+	static final long[][] rookAttacks = new long[64][];
+	static final long[][] bishopAttacks = new long[64][];
+
+	public static long GetRookAttacks (int square, long blockers) {
+		int key = (int) (((blockers & rookMask[square]) * rookMagics[square]) >>> rookShifts[square]);
+		return rookAttacks[square][key];
+	}
+
+	public static long GetBishopAttacks (int square, long blockers) {
+		int key = (int) (((blockers & bishopMask[square]) * bishopMagics[square]) >>> bishopShifts[square]);
+		return bishopAttacks[square][key];
+	}
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			rookMask[square] = CreateMovementMask(square, true);
+			bishopMask[square] = CreateMovementMask(square, false);
+		}
+		for (int square = 0; square < 64; square++) {
+			rookShifts[square] = 64 - Long.bitCount(rookMask[square]);
+			rookAttacks[square] = new long[1 << Long.bitCount(rookMask[square])];
+			CreateTable(square, rookMask[square], rookMagics[square], rookShifts[square], rookAttacks[square], true);
+
+			bishopShifts[square] = 64 - Long.bitCount(bishopMask[square]);
+			bishopAttacks[square] = new long[1 << Long.bitCount(bishopMask[square])];
+			CreateTable(square, bishopMask[square], bishopMagics[square], bishopShifts[square], bishopAttacks[square], false);
+		}
+	}
+
+	// Squares whose occupancy affects the moves of a rook/bishop on the given square.
+	// The last square in each direction is left out since a piece there can't block anything further.
+	static long CreateMovementMask (int square, boolean orthogonal) {
+		long mask = 0;
+		int startDirIndex = (orthogonal) ? 0 : 4;
+		int endDirIndex = (orthogonal) ? 4 : 8;
+		for (int directionIndex = startDirIndex; directionIndex < endDirIndex; directionIndex++) {
+			int directionOffset = PrecomputedMoveData.directionOffsets[directionIndex];
+			for (int n = 0; n < PrecomputedMoveData.numSquaresToEdge[square][directionIndex] - 1; n++) {
+				mask |= 1L << (square + directionOffset * (n + 1));
+			}
+		}
+		return mask;
+	}
+
+	// Squares attacked by a rook/bishop on the given square, found by walking each ray until it hits a blocker
+	static long CalculateAttacksSlow (int square, long blockers, boolean orthogonal) {
+		long attacks = 0;
+		int startDirIndex = (orthogonal) ? 0 : 4;
+		int endDirIndex = (orthogonal) ? 4 : 8;
+		for (int directionIndex = startDirIndex; directionIndex < endDirIndex; directionIndex++) {
+			int directionOffset = PrecomputedMoveData.directionOffsets[directionIndex];
+			for (int n = 0; n < PrecomputedMoveData.numSquaresToEdge[square][directionIndex]; n++) {
+				int targetSquare = square + directionOffset * (n + 1);
+				attacks |= 1L << targetSquare;
+				if (BitBoardUtility.ContainsSquare(blockers, targetSquare)) {
+					break;
+				}
+			}
+		}
+		return attacks;
+	}
+
+	// Fills in the attack table of a square for every arrangement of blockers in its movement mask
+	static void CreateTable (int square, long mask, long magic, int shift, long[] table, boolean orthogonal) {
+		int numArrangements = 1 << Long.bitCount(mask);
+		boolean[] used = new boolean[table.length];
+
+		// Enumerate every subset of the mask
+		long blockers = 0;
+		for (int i = 0; i < numArrangements; i++) {
+			long attacks = CalculateAttacksSlow(square, blockers, orthogonal);
+			int index = (int) ((blockers * magic) >>> shift);
+			if (used[index] && table[index] != attacks) {
+				throw new IllegalStateException("Magic number for square " + square + " maps two different attack sets to the same index");
+			}
+			used[index] = true;
+			table[index] = attacks;
+			blockers = (blockers - mask) & mask;
+		}
+	}
+}
@@ -97,6 +97,46 @@ public class Move {
 	
 	
 
+	// Static versions of the accessors above working directly on a 16 bit move value stored in an int.
+	// Search and move generation pass moves around like this so no Move objects are allocated.
+	public static final int InvalidMoveValue = 0;
+
+	public static int createMoveValue(int startSquare, int targetSquare, int flag) {
+		return startSquare | targetSquare << 6 | flag << 12;
+	}
+
+	public static int getStartSquare(int moveValue) {
+		return moveValue & 0b111111;
+	}
+
+	public static int getTargetSquare(int moveValue) {
+		return (moveValue >> 6) & 0b111111;
+	}
+
+	public static int getMoveFlag(int moveValue) {
+		return (moveValue >> 12) & 0b1111;
+	}
+
+	public static boolean isPromotion(int moveValue) {
+		int flag = getMoveFlag(moveValue);
+		return flag >= Flag.PromoteToQueen && flag <= Flag.PromoteToBishop;
+	}
+
+	public static int getPromotionPieceType(int moveValue) {
+		switch (getMoveFlag(moveValue)) {
+		case Flag.PromoteToRook:
+			return Piece.Rook;
+		case Flag.PromoteToKnight:
+			return Piece.Knight;
+		case Flag.PromoteToBishop:
+			return Piece.Bishop;
+		case Flag.PromoteToQueen:
+			return Piece.Queen;
+		default:
+			return Piece.None;
+		}
+	}
+
 	public static Move getInvalidMove() {
 
 		return new Move((short) 0);
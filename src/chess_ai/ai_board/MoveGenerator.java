@@ -22,8 +22,14 @@ public class MoveGenerator {
 
 	public PromotionMode promotionsToGenerate = PromotionMode.All;
 
+	// Maximum number of legal moves in any chess position is 218
+	public static final int MaxMoves = 256;
+
 	// ---- Instance variables ----
-	List<Move> moves;
+	// moves are written as 16 bit move values (see Move) into the caller's buffer
+	int[] moves;
+	int numMoves;
+	final int[] internalMoveBuffer = new int[MaxMoves];
 	boolean isWhiteToMove;
 	int friendlyColour;
 	int opponentColour;
@@ -42,32 +48,127 @@ public class MoveGenerator {
 	public long opponentPawnAttackMap;
 	long opponentSlidingAttackMap;
 
+	long friendlyPieces;
+	long opponentPieces;
+	long opponentOrthogonalSliders;
+	long opponentDiagonalSliders;
+
 	boolean genQuiets;
+	boolean genCaptures = true;
 	AIBoard board;
 	
 	
 	static PrecomputedMoveData pmd = new PrecomputedMoveData();
 	
-	// Generates list of legal moves in current position.
+	// Generates legal moves in current position into moveBuffer and returns the number of moves generated.
+	// Moves are stored as 16 bit move values (see Move), nothing is allocated so this is the version used in search.
 	// Quiet moves (non captures) can optionally be excluded. This is used in quiescence search.
-	public List<Move> generateMoves (AIBoard board, boolean includeQuietMoves) {
+	public int generateMoves (AIBoard board, int[] moveBuffer, boolean includeQuietMoves) {
 		this.board = board;
+		this.moves = moveBuffer;
 		genQuiets = includeQuietMoves;
+		genCaptures = true;
 		initiateVariables();
 
 		calculateAttackData ();
+		return generateFromAttackData ();
+	}
+
+	// Staged generation, used by the search to generate the moves of a position a few at a time.
+	// beginStagedGeneration calculates the attack data (and inCheck) once; generateCaptures, generateQuietMoves
+	// and isLegal then reuse it, so the board must be in the same position whenever they are called.
+	public void beginStagedGeneration (AIBoard board) {
+		this.board = board;
+		initiateVariables();
+		calculateAttackData ();
+	}
+
+	// Captures (including en passant and capturing promotions) into moveBuffer, returns the number of moves
+	public int generateCaptures (int[] moveBuffer) {
+		moves = moveBuffer;
+		numMoves = 0;
+		genQuiets = false;
+		genCaptures = true;
+		return generateFromAttackData ();
+	}
+
+	// Every move generateCaptures doesn't generate (including castling and promotions that don't capture)
+	public int generateQuietMoves (int[] moveBuffer) {
+		moves = moveBuffer;
+		numMoves = 0;
+		genQuiets = true;
+		genCaptures = false;
+		int count = generateFromAttackData ();
+		genCaptures = true;
+		return count;
+	}
+
+	// True if the move (for example a move from the transposition table) is legal in the position
+	// given to beginStagedGeneration. Only the moves of the piece on the start square are generated.
+	public boolean isLegal (int move) {
+		int startSquare = Move.getStartSquare(move);
+		int piece = board.Square[startSquare];
+		if (!Piece.IsColour(piece, friendlyColour)) {
+			return false;
+		}
+		int pieceType = Piece.PieceType(piece);
+		if (inDoubleCheck && pieceType != Piece.King) {
+			return false;
+		}
+		moves = internalMoveBuffer;
+		numMoves = 0;
+		genQuiets = true;
+		genCaptures = true;
+		switch (pieceType) {
+			case Piece.King:
+				generateKingMoves ();
+				break;
+			case Piece.Pawn:
+				generatePawnMoves ();
+				break;
+			case Piece.Knight:
+				generateKnightMoves ();
+				break;
+			default:
+				generateSlidingPieceMoves (startSquare, Piece.IsRookOrQueen(piece), Piece.IsBishopOrQueen(piece));
+				break;
+		}
+		for (int i = 0; i < numMoves; i++) {
+			if (moves[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int generateFromAttackData () {
 		generateKingMoves ();
 
 		// Only king moves are valid in a double check position, so can return early.
 		if (inDoubleCheck) {
-			return moves;
+			return numMoves;
 		}
 
 		generateSlidingMoves ();
 		generateKnightMoves ();
 		generatePawnMoves ();
 
-		return moves;
+		return numMoves;
+	}
+
+	public int generateMoves (AIBoard board, int[] moveBuffer) {
+		return generateMoves(board, moveBuffer, true);
+	}
+
+	// Generates list of legal moves in current position.
+	// Quiet moves (non captures) can optionally be excluded. This is used in quiescence search.
+	public List<Move> generateMoves (AIBoard board, boolean includeQuietMoves) {
+		int count = generateMoves(board, internalMoveBuffer, includeQuietMoves);
+		List<Move> moveList = new ArrayList<Move>(count);
+		for (int i = 0; i < count; i++) {
+			moveList.add(new Move((short) internalMoveBuffer[i]));
+		}
+		return moveList;
 	}
 	
 	public List<Move> generateMoves(AIBoard board) {
@@ -75,12 +176,12 @@ public class MoveGenerator {
 	}
 	
 	public boolean isInCheck(AIBoard board) {
-		generateMoves(board);
+		generateMoves(board, internalMoveBuffer, true);
 		return inCheck;
 	}
 	
 	void initiateVariables () {
-		moves = new ArrayList<Move>(64);
+		numMoves = 0;
 		inCheck = false;
 		inDoubleCheck = false;
 		pinsExistInPosition = false;
@@ -93,22 +194,27 @@ public class MoveGenerator {
 		friendlyKingSquare = board.KingSquare[board.ColourToMoveIndex];
 		friendlyColourIndex = (board.WhiteToMove) ? AIBoard.WhiteIndex : AIBoard.BlackIndex;
 		opponentColourIndex = 1 - friendlyColourIndex;
+
+		friendlyPieces = board.colourBitboards[friendlyColourIndex];
+		opponentPieces = board.colourBitboards[opponentColourIndex];
+		opponentOrthogonalSliders = board.GetOrthogonalSliders(opponentColourIndex);
+		opponentDiagonalSliders = board.GetDiagonalSliders(opponentColourIndex);
 	}
 	
 	void generateSlidingMoves() {
 		PieceList rooks = board.rooks[friendlyColourIndex];
 		for (int i = 0; i < rooks.size(); i++) {
-			generateSlidingPieceMoves(rooks.get(i), 0, 4);
+			generateSlidingPieceMoves(rooks.get(i), true, false);
 		}
 
 		PieceList bishops = board.bishops[friendlyColourIndex];
 		for (int i = 0; i < bishops.size(); i++) {
-			generateSlidingPieceMoves(bishops.get(i), 4, 8);
+			generateSlidingPieceMoves(bishops.get(i), false, true);
 		}
 
 		PieceList queens = board.queens[friendlyColourIndex];
 		for (int i = 0; i < queens.size(); i++) {
-			generateSlidingPieceMoves(queens.get(i), 0, 8);
+			generateSlidingPieceMoves(queens.get(i), true, true);
 		}
 
 	}
@@ -123,6 +229,9 @@ public class MoveGenerator {
 			}
 
 			boolean isCapture = Piece.IsColour (pieceOnTargetSquare, opponentColour);
+			if (isCapture && !genCaptures) {
+				continue;
+			}
 			if (!isCapture) {
 				// King can't move to square marked as under enemy control, unless he is capturing that piece
 				// Also skip if not generating quiet moves
@@ -133,7 +242,7 @@ public class MoveGenerator {
 
 			// Safe for king to move to this square
 			if (!SquareIsAttacked (targetSquare)) {
-				moves.add(new Move (friendlyKingSquare, targetSquare));
+				addMove (friendlyKingSquare, targetSquare);
 
 				// Castling:
 				if (!inCheck && !isCapture) {
@@ -142,7 +251,7 @@ public class MoveGenerator {
 						int castleKingsideSquare = targetSquare + 1;
 						if (board.Square[castleKingsideSquare] == Piece.None) {
 							if (!SquareIsAttacked (castleKingsideSquare)) {
-								moves.add (new Move (friendlyKingSquare, castleKingsideSquare, Move.Flag.Castling));
+								addMove (friendlyKingSquare, castleKingsideSquare, Move.Flag.Castling);
 							}
 						}
 					}
@@ -151,7 +260,7 @@ public class MoveGenerator {
 						int castleQueensideSquare = targetSquare - 1;
 						if (board.Square[castleQueensideSquare] == Piece.None && board.Square[castleQueensideSquare - 1] == Piece.None) {
 							if (!SquareIsAttacked (castleQueensideSquare)) {
-								moves.add (new Move (friendlyKingSquare, castleQueensideSquare, Move.Flag.Castling));
+								addMove (friendlyKingSquare, castleQueensideSquare, Move.Flag.Castling);
 							}
 						}
 					}
@@ -163,7 +272,7 @@ public class MoveGenerator {
 
 
 
-	void generateSlidingPieceMoves (int startSquare, int startDirIndex, int endDirIndex) {
+	void generateSlidingPieceMoves (int startSquare, boolean orthogonal, boolean diagonal) {
 		boolean isPinned = IsPinned (startSquare);
 
 		// If this piece is pinned, and the king is in check, this piece cannot move
@@ -171,61 +280,62 @@ public class MoveGenerator {
 			return;
 		}
 
-		for (int directionIndex = startDirIndex; directionIndex < endDirIndex; directionIndex++) {
-			int currentDirOffset = pmd.directionOffsets[directionIndex];
-
-			// If pinned, this piece can only move along the ray towards/away from the friendly king, so skip other directions
-			if (isPinned && !IsMovingAlongRay (currentDirOffset, friendlyKingSquare, startSquare)) {
-				continue;
-			}
-
-			for (int n = 0; n < pmd.numSquaresToEdge[startSquare][directionIndex]; n++) {
-				int targetSquare = startSquare + currentDirOffset * (n + 1);
-				int targetSquarePiece = board.Square[targetSquare];
-
-				// Blocked by friendly piece, so stop looking in this direction
-				if (Piece.IsColour (targetSquarePiece, friendlyColour)) {
-					break;
-				}
-				boolean isCapture = targetSquarePiece != Piece.None;
+		long moveMask = 0;
+		if (orthogonal) {
+			moveMask |= Magic.GetRookAttacks (startSquare, board.allPiecesBitboard);
+		}
+		if (diagonal) {
+			moveMask |= Magic.GetBishopAttacks (startSquare, board.allPiecesBitboard);
+		}
+		// Can't capture friendly pieces
+		moveMask &= ~friendlyPieces;
+		if (!genQuiets) {
+			moveMask &= opponentPieces;
+		}
+		if (!genCaptures) {
+			moveMask &= ~opponentPieces;
+		}
+		// If in check, the piece can only capture the checking piece or block the check
+		if (inCheck) {
+			moveMask &= checkRayBitmask;
+		}
+		// If pinned, this piece can only move along the ray towards/away from the friendly king
+		if (isPinned) {
+			moveMask &= pmd.alignMask[startSquare][friendlyKingSquare];
+		}
 
-				boolean movePreventsCheck = SquareIsInCheckRay (targetSquare);
-				if (movePreventsCheck || !inCheck) {
-					if (genQuiets || isCapture) {
-						moves.add (new Move (startSquare, targetSquare));
-					}
-				}
-				// If square not empty, can't move any further in this direction
-				// Also, if this move blocked a check, further moves won't block the check
-				if (isCapture || movePreventsCheck) {
-					break;
-				}
-			}
+		while (moveMask != 0) {
+			int targetSquare = Long.numberOfTrailingZeros (moveMask);
+			moveMask &= moveMask - 1;
+			addMove (startSquare, targetSquare);
 		}
 	}
 
 	void generateKnightMoves () {
-		PieceList myKnights = board.knights[friendlyColourIndex];
+		// Knight cannot move if it is pinned
+		long myKnights = board.GetPieceBitboard(Piece.Knight, friendlyColourIndex) & ~pinRayBitmask;
 
-		for (int i = 0; i < myKnights.size(); i++) {
-			int startSquare = myKnights.get(i);
+		long moveMask = ~friendlyPieces;
+		if (!genQuiets) {
+			moveMask &= opponentPieces;
+		}
+		if (!genCaptures) {
+			moveMask &= ~opponentPieces;
+		}
+		// If in check, the knight can only capture the checking piece or block the check
+		if (inCheck) {
+			moveMask &= checkRayBitmask;
+		}
 
-			// Knight cannot move if it is pinned
-			if (IsPinned (startSquare)) {
-				continue;
-			}
+		while (myKnights != 0) {
+			int startSquare = Long.numberOfTrailingZeros (myKnights);
+			myKnights &= myKnights - 1;
 
-			for (int knightMoveIndex = 0; knightMoveIndex < pmd.knightMoves[startSquare].length; knightMoveIndex++) {
-				int targetSquare = pmd.knightMoves[startSquare][knightMoveIndex];
-				int targetSquarePiece = board.Square[targetSquare];
-				boolean isCapture = Piece.IsColour (targetSquarePiece, opponentColour);
-				if (genQuiets || isCapture) {
-					// Skip if square contains friendly piece, or if in check and knight is not interposing/capturing checking piece
-					if (Piece.IsColour (targetSquarePiece, friendlyColour) || (inCheck && !SquareIsInCheckRay (targetSquare))) {
-						continue;
-					}
-					moves.add (new Move (startSquare, targetSquare));
-				}
+			long knightMoves = pmd.knightAttackBitboards[startSquare] & moveMask;
+			while (knightMoves != 0) {
+				int targetSquare = Long.numberOfTrailingZeros (knightMoves);
+				knightMoves &= knightMoves - 1;
+				addMove (startSquare, targetSquare);
 			}
 		}
 	}
@@ -260,7 +370,7 @@ public class MoveGenerator {
 							if (oneStepFromPromotion) {
 								MakePromotionMoves (startSquare, squareOneForward);
 							} else {
-								moves.add (new Move (startSquare, squareOneForward));
+								addMove (startSquare, squareOneForward);
 							}
 						}
 
@@ -270,7 +380,7 @@ public class MoveGenerator {
 							if (board.Square[squareTwoForward] == Piece.None) {
 								// Not in check, or pawn is interposing checking piece
 								if (!inCheck || SquareIsInCheckRay (squareTwoForward)) {
-									moves.add (new Move (startSquare, squareTwoForward, Move.Flag.PawnTwoForward));
+									addMove (startSquare, squareTwoForward, Move.Flag.PawnTwoForward);
 								}
 							}
 						}
@@ -279,7 +389,7 @@ public class MoveGenerator {
 			}
 
 			// Pawn captures.
-			for (int j = 0; j < 2; j++) {
+			for (int j = 0; j < 2 && genCaptures; j++) {
 				// Check if square exists diagonal to pawn
 				if (pmd.numSquaresToEdge[startSquare][pmd.pawnAttackDirections[friendlyColourIndex][j]] > 0) {
 					// move in direction friendly pawns attack to get square from which enemy pawn would attack
@@ -301,7 +411,7 @@ public class MoveGenerator {
 						if (oneStepFromPromotion) {
 							MakePromotionMoves (startSquare, targetSquare);
 						} else {
-							moves.add (new Move (startSquare, targetSquare));
+							addMove (startSquare, targetSquare);
 						}
 					}
 
@@ -309,7 +419,7 @@ public class MoveGenerator {
 					if (targetSquare == enPassantSquare) {
 						int epCapturedPawnSquare = targetSquare + ((board.WhiteToMove) ? -8 : 8);
 						if (!InCheckAfterEnPassant (startSquare, targetSquare, epCapturedPawnSquare)) {
-							moves.add (new Move (startSquare, targetSquare, Move.Flag.EnPassantCapture));
+							addMove (startSquare, targetSquare, Move.Flag.EnPassantCapture);
 						}
 					}
 				}
@@ -317,14 +427,22 @@ public class MoveGenerator {
 		}
 	}
 
+	void addMove (int startSquare, int targetSquare) {
+		moves[numMoves++] = Move.createMoveValue(startSquare, targetSquare, Move.Flag.None);
+	}
+
+	void addMove (int startSquare, int targetSquare, int flag) {
+		moves[numMoves++] = Move.createMoveValue(startSquare, targetSquare, flag);
+	}
+
 	void MakePromotionMoves (int fromSquare, int toSquare) {
-		moves.add (new Move (fromSquare, toSquare, Move.Flag.PromoteToQueen));
+		addMove (fromSquare, toSquare, Move.Flag.PromoteToQueen);
 		if (promotionsToGenerate == PromotionMode.All) {
-			moves.add (new Move (fromSquare, toSquare, Move.Flag.PromoteToKnight));
-			moves.add (new Move (fromSquare, toSquare, Move.Flag.PromoteToRook));
-			moves.add (new Move (fromSquare, toSquare, Move.Flag.PromoteToBishop));
+			addMove (fromSquare, toSquare, Move.Flag.PromoteToKnight);
+			addMove (fromSquare, toSquare, Move.Flag.PromoteToRook);
+			addMove (fromSquare, toSquare, Move.Flag.PromoteToBishop);
 		} else if (promotionsToGenerate == PromotionMode.QueenAndKnight) {
-			moves.add (new Move (fromSquare, toSquare, Move.Flag.PromoteToKnight));
+			addMove (fromSquare, toSquare, Move.Flag.PromoteToKnight);
 		}
 
 	}
@@ -362,140 +480,51 @@ public class MoveGenerator {
 	void GenSlidingAttackMap () {
 		opponentSlidingAttackMap = 0;
 
-		PieceList enemyRooks = board.rooks[opponentColourIndex];
-		for (int i = 0; i < enemyRooks.size(); i++) {
-			UpdateSlidingAttackPiece (enemyRooks.get(i), 0, 4);
-		}
+		// Attacks go through the friendly king so the king can't step back along the line of a check
+		long blockers = board.allPiecesBitboard & ~(1L << friendlyKingSquare);
 
-		PieceList enemyQueens = board.queens[opponentColourIndex];
-		for (int i = 0; i < enemyQueens.size(); i++) {
-			UpdateSlidingAttackPiece (enemyQueens.get(i), 0, 8);
+		long orthogonalSliders = opponentOrthogonalSliders;
+		while (orthogonalSliders != 0) {
+			int square = Long.numberOfTrailingZeros (orthogonalSliders);
+			orthogonalSliders &= orthogonalSliders - 1;
+			opponentSlidingAttackMap |= Magic.GetRookAttacks (square, blockers);
 		}
 
-		PieceList enemyBishops = board.bishops[opponentColourIndex];
-		for (int i = 0; i < enemyBishops.size(); i++) {
-			UpdateSlidingAttackPiece (enemyBishops.get(i), 4, 8);
-		}
-	}
-
-	void UpdateSlidingAttackPiece (int startSquare, int startDirIndex, int endDirIndex) {
-
-		for (int directionIndex = startDirIndex; directionIndex < endDirIndex; directionIndex++) {
-			int currentDirOffset = pmd.directionOffsets[directionIndex];
-			for (int n = 0; n < pmd.numSquaresToEdge[startSquare][directionIndex]; n++) {
-				int targetSquare = startSquare + currentDirOffset * (n + 1);
-				int targetSquarePiece = board.Square[targetSquare];
-				opponentSlidingAttackMap |= Integer.toUnsignedLong(1) << targetSquare;
-				if (targetSquare != friendlyKingSquare) {
-					if (targetSquarePiece != Piece.None) {
-						break;
-					}
-				}
-			}
+		long diagonalSliders = opponentDiagonalSliders;
+		while (diagonalSliders != 0) {
+			int square = Long.numberOfTrailingZeros (diagonalSliders);
+			diagonalSliders &= diagonalSliders - 1;
+			opponentSlidingAttackMap |= Magic.GetBishopAttacks (square, blockers);
 		}
 	}
 
 	void calculateAttackData () {
 		GenSlidingAttackMap ();
-		// Search squares in all directions around friendly king for checks/pins by enemy sliding pieces (queen, rook, bishop)
-		int startDirIndex = 0;
-		int endDirIndex = 8;
-
-		if (board.queens[opponentColourIndex].size() == 0) {
-			startDirIndex = (board.rooks[opponentColourIndex].size() > 0) ? 0 : 4;
-			endDirIndex = (board.bishops[opponentColourIndex].size() > 0) ? 8 : 4;
-		}
-
-		for (int dir = startDirIndex; dir < endDirIndex; dir++) {
-			boolean isDiagonal = dir > 3;
-
-			int n = pmd.numSquaresToEdge[friendlyKingSquare][dir];
-			int directionOffset = pmd.directionOffsets[dir];
-			boolean isFriendlyPieceAlongRay = false;
-			long rayMask = 0;
-
-			for (int i = 0; i < n; i++) {
-				int squareIndex = friendlyKingSquare + directionOffset * (i + 1);
-				rayMask |= Integer.toUnsignedLong(1) << squareIndex;
-				int piece = board.Square[squareIndex];
-
-				// This square contains a piece
-				if (piece != Piece.None) {
-					if (Piece.IsColour (piece, friendlyColour)) {
-						// First friendly piece we have come across in this direction, so it might be pinned
-						if (!isFriendlyPieceAlongRay) {
-							isFriendlyPieceAlongRay = true;
-						}
-						// This is the second friendly piece we've found in this direction, therefore pin is not possible
-						else {
-							break;
-						}
-					}
-					// This square contains an enemy piece
-					else {
-						int pieceType = Piece.PieceType (piece);
-
-						// Check if piece is in bitmask of pieces able to move in current direction
-						if (isDiagonal && Piece.IsBishopOrQueen (pieceType) || !isDiagonal && Piece.IsRookOrQueen (pieceType)) {
-							// Friendly piece blocks the check, so this is a pin
-							if (isFriendlyPieceAlongRay) {
-								pinsExistInPosition = true;
-								pinRayBitmask |= rayMask;
-							}
-							// No friendly piece blocking the attack, so this is a check
-							else {
-								checkRayBitmask |= rayMask;
-								inDoubleCheck = inCheck; // if already in check, then this is double check
-								inCheck = true;
-							}
-							break;
-						} else {
-							// This enemy piece is not able to move in the current direction, and so is blocking any checks/pins
-							break;
-						}
-					}
-				}
-			}
-			// Stop searching for pins if in double check, as the king is the only piece able to move in that case anyway
-			if (inDoubleCheck) {
-				break;
-			}
-
-		}
+		// Look for checks/pins by enemy sliding pieces (queen, rook, bishop) along the lines through the friendly king
+		calculateSlidingChecksAndPins (Magic.GetRookAttacks (friendlyKingSquare, board.allPiecesBitboard), opponentOrthogonalSliders, true);
+		calculateSlidingChecksAndPins (Magic.GetBishopAttacks (friendlyKingSquare, board.allPiecesBitboard), opponentDiagonalSliders, false);
 
 		// Knight attacks
-		PieceList opponentKnights = board.knights[opponentColourIndex];
-		opponentKnightAttacks = 0;
-		boolean isKnightCheck = false;
-
-		for (int knightIndex = 0; knightIndex < opponentKnights.size(); knightIndex++) {
-			int startSquare = opponentKnights.get(knightIndex);
-			opponentKnightAttacks |= pmd.knightAttackBitboards[startSquare];
-
-			if (!isKnightCheck && BitBoardUtility.ContainsSquare (opponentKnightAttacks, friendlyKingSquare)) {
-				isKnightCheck = true;
-				inDoubleCheck = inCheck; // if already in check, then this is double check
-				inCheck = true;
-				checkRayBitmask |= Integer.toUnsignedLong(1) << startSquare;
-			}
+		long opponentKnights = board.GetPieceBitboard(Piece.Knight, opponentColourIndex);
+		opponentKnightAttacks = BitBoardUtility.KnightAttacks (opponentKnights);
+
+		// A knight on a square a knight could jump to from the king is giving check (only one knight can give check at a time)
+		long knightCheckers = pmd.knightAttackBitboards[friendlyKingSquare] & opponentKnights;
+		if (knightCheckers != 0) {
+			inDoubleCheck = inCheck; // if already in check, then this is double check
+			inCheck = true;
+			checkRayBitmask |= knightCheckers;
 		}
 
 		// Pawn attacks
-		PieceList opponentPawns = board.pawns[opponentColourIndex];
-		opponentPawnAttackMap = 0;
-		boolean isPawnCheck = false;
-
-		for (int pawnIndex = 0; pawnIndex < opponentPawns.size(); pawnIndex++) {
-			int pawnSquare = opponentPawns.get(pawnIndex);
-			long pawnAttacks = pmd.pawnAttackBitboards[pawnSquare][opponentColourIndex];
-			opponentPawnAttackMap |= pawnAttacks;
-
-			if (!isPawnCheck && BitBoardUtility.ContainsSquare (pawnAttacks, friendlyKingSquare)) {
-				isPawnCheck = true;
-				inDoubleCheck = inCheck; // if already in check, then this is double check
-				inCheck = true;
-				checkRayBitmask |= Integer.toUnsignedLong(1) << pawnSquare;
-			}
+		long opponentPawns = board.GetPieceBitboard(Piece.Pawn, opponentColourIndex);
+		opponentPawnAttackMap = BitBoardUtility.PawnAttacks (opponentPawns, opponentColourIndex == AIBoard.WhiteIndex);
+
+		long pawnCheckers = pmd.pawnAttackBitboards[friendlyKingSquare][friendlyColourIndex] & opponentPawns;
+		if (pawnCheckers != 0) {
+			inDoubleCheck = inCheck; // if already in check, then this is double check
+			inCheck = true;
+			checkRayBitmask |= pawnCheckers;
 		}
 
 		int enemyKingSquare = board.KingSquare[opponentColourIndex];
@@ -504,6 +533,34 @@ public class MoveGenerator {
 		opponentAttackMap = opponentAttackMapNoPawns | opponentPawnAttackMap;
 	}
 
+	// kingRays are the squares a slider on the friendly king square would attack
+	void calculateSlidingChecksAndPins (long kingRays, long enemySliders, boolean orthogonal) {
+		// Enemy sliders on an open line to the king are giving check
+		long checkers = kingRays & enemySliders;
+		while (checkers != 0) {
+			int checkerSquare = Long.numberOfTrailingZeros (checkers);
+			checkers &= checkers - 1;
+			checkRayBitmask |= pmd.betweenMask[friendlyKingSquare][checkerSquare] | (1L << checkerSquare);
+			inDoubleCheck = inCheck; // if already in check, then this is double check
+			inCheck = true;
+		}
+
+		// Remove the first friendly piece on each line; enemy sliders that can now see the king are pinning that piece
+		long friendlyBlockers = kingRays & friendlyPieces;
+		if (friendlyBlockers == 0) {
+			return;
+		}
+		long blockers = board.allPiecesBitboard ^ friendlyBlockers;
+		long xRays = (orthogonal) ? Magic.GetRookAttacks (friendlyKingSquare, blockers) : Magic.GetBishopAttacks (friendlyKingSquare, blockers);
+		long pinners = xRays & ~kingRays & enemySliders;
+		while (pinners != 0) {
+			int pinnerSquare = Long.numberOfTrailingZeros (pinners);
+			pinners &= pinners - 1;
+			pinsExistInPosition = true;
+			pinRayBitmask |= pmd.betweenMask[friendlyKingSquare][pinnerSquare] | (1L << pinnerSquare);
+		}
+	}
+
 	boolean SquareIsAttacked (int square) {
 		return BitBoardUtility.ContainsSquare (opponentAttackMap, square);
 	}
@@ -515,7 +572,7 @@ public class MoveGenerator {
 		board.Square[epCapturedPawnSquare] = Piece.None;
 
 		boolean inCheckAfterEpCapture = false;
-		if (SquareAttackedAfterEPCapture (epCapturedPawnSquare, startSquare)) {
+		if (SquareAttackedAfterEPCapture (epCapturedPawnSquare, startSquare, targetSquare)) {
 			inCheckAfterEpCapture = true;
 		}
 
@@ -526,31 +583,18 @@ public class MoveGenerator {
 		return inCheckAfterEpCapture;
 	}
 
-	boolean SquareAttackedAfterEPCapture (int epCaptureSquare, int capturingPawnStartSquare) {
+	boolean SquareAttackedAfterEPCapture (int epCaptureSquare, int capturingPawnStartSquare, int targetSquare) {
 		if (BitBoardUtility.ContainsSquare (opponentAttackMapNoPawns, friendlyKingSquare)) {
 			return true;
 		}
 
-		// Loop through the horizontal direction towards ep capture to see if any enemy piece now attacks king
-		int dirIndex = (epCaptureSquare < friendlyKingSquare) ? 2 : 3;
-		for (int i = 0; i < pmd.numSquaresToEdge[friendlyKingSquare][dirIndex]; i++) {
-			int squareIndex = friendlyKingSquare + pmd.directionOffsets[dirIndex] * (i + 1);
-			int piece = board.Square[squareIndex];
-			if (piece != Piece.None) {
-				// Friendly piece is blocking view of this square from the enemy.
-				if (Piece.IsColour (piece, friendlyColour)) {
-					break;
-				}
-				// This square contains an enemy piece
-				else {
-					if (Piece.IsRookOrQueen (piece)) {
-						return true;
-					} else {
-						// This piece is not able to move in the current direction, and is therefore blocking any checks along this line
-						break;
-					}
-				}
-			}
+		// With both pawns gone from their squares, see if any enemy slider now attacks the king
+		long blockersAfterCapture = board.allPiecesBitboard ^ (1L << capturingPawnStartSquare) ^ (1L << epCaptureSquare) ^ (1L << targetSquare);
+		if ((Magic.GetRookAttacks (friendlyKingSquare, blockersAfterCapture) & opponentOrthogonalSliders) != 0) {
+			return true;
+		}
+		if ((Magic.GetBishopAttacks (friendlyKingSquare, blockersAfterCapture) & opponentDiagonalSliders) != 0) {
+			return true;
 		}
 
 		// check if enemy pawn is controlling this square (can't use pawn attack bitboard, because pawn has been captured)
@@ -0,0 +1,80 @@
+package chess_ai.ai_board;
+
+/**
+ * Fixed size cache of pawn structure evaluations, keyed by AIBoard's pawn key (a zobrist key of the pawns only).
+ * The pawns change in few of the moves searched, so most evaluations find their pawn structure here
+ * instead of evaluating it again.
+ *
+ * Every board has its own table (created the first time it evaluates a position), so it is never shared
+ * between threads.
+ *
+ * @author Graham Young
+ *
+ */
+public class PawnHashTable {
+
+	public static final int DefaultNumEntries = 1 << 14; // must be a power of two
+
+	final long[] keys;
+	final int[] middlegameScores;
+	final int[] endgameScores;
+	final int indexMask;
+
+	long numProbes;
+	long numHits;
+
+	public PawnHashTable () {
+		this(DefaultNumEntries);
+	}
+
+	public PawnHashTable (int numEntries) {
+		keys = new long[numEntries];
+		middlegameScores = new int[numEntries];
+		endgameScores = new int[numEntries];
+		indexMask = numEntries - 1;
+		// An empty slot has key 0, which is also the key of a position without pawns. The stored scores
+		// (0) are correct for that position, so it never needs special handling.
+	}
+
+	/**
+	 * finds the entry for the given pawns, evaluating and storing them if they aren't in the table
+	 * @return index of the entry, for use with GetMiddlegameScore and GetEndgameScore
+	 */
+	public int Probe (long pawnKey, long whitePawns, long blackPawns) {
+		int index = (int) pawnKey & indexMask;
+		numProbes++;
+		if (keys[index] == pawnKey) {
+			numHits++;
+			return index;
+		}
+		PawnStructure.Evaluate(whitePawns, blackPawns, this, index);
+		keys[index] = pawnKey;
+		return index;
+	}
+
+	public int GetMiddlegameScore (int index) {
+		return middlegameScores[index];
+	}
+
+	public int GetEndgameScore (int index) {
+		return endgameScores[index];
+	}
+
+	public long GetNumProbes () {
+		return numProbes;
+	}
+
+	public long GetNumHits () {
+		return numHits;
+	}
+
+	// hits per probe in percent
+	public double HitRate () {
+		return (numProbes == 0) ? 0 : 100.0 * numHits / numProbes;
+	}
+
+	public void ResetStatistics () {
+		numProbes = 0;
+		numHits = 0;
+	}
+}
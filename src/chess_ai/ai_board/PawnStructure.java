@@ -0,0 +1,131 @@
+package chess_ai.ai_board;
+
+/**
+ * Pawn structure evaluation: doubled, isolated, backward and passed pawns, which only depend on where the
+ * pawns are so the results can be cached in a PawnHashTable, and the pawn shield in front of each king.
+ * All scores are white minus black with separate middlegame and endgame values (see AIBoard.evaluate).
+ *
+ * @author Graham Young
+ *
+ */
+public class PawnStructure {
+
+	static final int doubledMiddlegame = -10;
+	static final int doubledEndgame = -20;
+	static final int isolatedMiddlegame = -10;
+	static final int isolatedEndgame = -15;
+	static final int backwardMiddlegame = -8;
+	static final int backwardEndgame = -10;
+	// indexed by rank from the pawn's own side (rank 1 = 0)
+	static final int[] passedMiddlegame = { 0, 5, 10, 15, 25, 40, 60, 0 };
+	static final int[] passedEndgame = { 0, 10, 20, 35, 55, 85, 120, 0 };
+	static final int shieldPawnMiddlegame = 12;
+
+	static final long[] fileMask = new long[8];
+	static final long[] adjacentFilesMask = new long[8];
+	// squares on the pawn's file and the adjacent files in front of it, a pawn is passed if no opponent pawn is on them
+	static final long[][] passedPawnMask = new long[2][64];
+	// squares on the adjacent files level with or behind the pawn, where friendly pawns could defend it as it advances
+	static final long[][] supportMask = new long[2][64];
+	// the two ranks in front of the king on its file and the adjacent files
+	static final long[][] kingShieldMask = new long[2][64];
+
+	static {
+		for (int file = 0; file < 8; file++) {
+			fileMask[file] = BitBoardUtility.FileA << file;
+		}
+		for (int file = 0; file < 8; file++) {
+			adjacentFilesMask[file] = ((file > 0) ? fileMask[file - 1] : 0) | ((file < 7) ? fileMask[file + 1] : 0);
+		}
+		for (int square = 0; square < 64; square++) {
+			int file = BoardRepresentation.FileIndex(square);
+			int rank = BoardRepresentation.RankIndex(square);
+			long threeFiles = fileMask[file] | adjacentFilesMask[file];
+			for (int otherRank = 0; otherRank < 8; otherRank++) {
+				long rankMask = BitBoardUtility.Rank1 << (otherRank * 8);
+				if (otherRank > rank) {
+					passedPawnMask[AIBoard.WhiteIndex][square] |= threeFiles & rankMask;
+				} else {
+					supportMask[AIBoard.WhiteIndex][square] |= adjacentFilesMask[file] & rankMask;
+				}
+				if (otherRank < rank) {
+					passedPawnMask[AIBoard.BlackIndex][square] |= threeFiles & rankMask;
+				} else {
+					supportMask[AIBoard.BlackIndex][square] |= adjacentFilesMask[file] & rankMask;
+				}
+				if (otherRank == rank + 1 || otherRank == rank + 2) {
+					kingShieldMask[AIBoard.WhiteIndex][square] |= threeFiles & rankMask;
+				}
+				if (otherRank == rank - 1 || otherRank == rank - 2) {
+					kingShieldMask[AIBoard.BlackIndex][square] |= threeFiles & rankMask;
+				}
+			}
+		}
+	}
+
+	/**
+	 * evaluates the pawn structure and writes the scores into the given slot of the table
+	 */
+	static void Evaluate (long whitePawns, long blackPawns, PawnHashTable table, int index) {
+		long whiteAttacks = BitBoardUtility.PawnAttacks(whitePawns, true);
+		long blackAttacks = BitBoardUtility.PawnAttacks(blackPawns, false);
+		int middlegame = 0;
+		int endgame = 0;
+
+		for (int colourIndex = 0; colourIndex < 2; colourIndex++) {
+			boolean white = colourIndex == AIBoard.WhiteIndex;
+			long friendlyPawns = (white) ? whitePawns : blackPawns;
+			long opponentPawns = (white) ? blackPawns : whitePawns;
+			long opponentAttacks = (white) ? blackAttacks : whiteAttacks;
+			int sign = (white) ? 1 : -1;
+
+			for (int file = 0; file < 8; file++) {
+				int pawnsOnFile = Long.bitCount(friendlyPawns & fileMask[file]);
+				if (pawnsOnFile > 1) {
+					middlegame += sign * doubledMiddlegame * (pawnsOnFile - 1);
+					endgame += sign * doubledEndgame * (pawnsOnFile - 1);
+				}
+			}
+
+			long pawns = friendlyPawns;
+			while (pawns != 0) {
+				int square = BitBoardUtility.LowestSquare(pawns);
+				pawns &= pawns - 1;
+				int file = BoardRepresentation.FileIndex(square);
+				int relativeRank = (white) ? BoardRepresentation.RankIndex(square) : 7 - BoardRepresentation.RankIndex(square);
+
+				if ((friendlyPawns & adjacentFilesMask[file]) == 0) {
+					middlegame += sign * isolatedMiddlegame;
+					endgame += sign * isolatedEndgame;
+				} else if ((friendlyPawns & supportMask[colourIndex][square]) == 0) {
+					int stopSquare = square + ((white) ? 8 : -8);
+					if (BitBoardUtility.ContainsSquare(opponentAttacks, stopSquare)) {
+						middlegame += sign * backwardMiddlegame;
+						endgame += sign * backwardEndgame;
+					}
+				}
+
+				// doubled pawns behind another friendly pawn aren't counted as passed
+				if ((opponentPawns & passedPawnMask[colourIndex][square]) == 0
+						&& (friendlyPawns & fileMask[file] & passedPawnMask[colourIndex][square]) == 0) {
+					middlegame += sign * passedMiddlegame[relativeRank];
+					endgame += sign * passedEndgame[relativeRank];
+				}
+			}
+		}
+
+		table.middlegameScores[index] = middlegame;
+		table.endgameScores[index] = endgame;
+	}
+
+	/**
+	 * the pawn shield depends on the king squares as well, so it isn't cached with the rest of the pawn structure
+	 * (it is only a couple of bitboard operations)
+	 * @return middlegame score of white's pawn shield minus black's
+	 */
+	static int KingShield (long whitePawns, long blackPawns, int whiteKingSquare, int blackKingSquare) {
+		int whiteShield = Long.bitCount(whitePawns & kingShieldMask[AIBoard.WhiteIndex][whiteKingSquare]);
+		int blackShield = Long.bitCount(blackPawns & kingShieldMask[AIBoard.BlackIndex][blackKingSquare]);
+		return (whiteShield - blackShield) * shieldPawnMiddlegame;
+	}
+}
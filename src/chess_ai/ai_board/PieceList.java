@@ -27,6 +27,12 @@ public class PieceList {
 		this(16);
 	}
 
+	public PieceList(PieceList other) {
+		occupiedSquares = other.occupiedSquares.clone();
+		map = other.map.clone();
+		numPieces = other.numPieces;
+	}
+
 	public int size() {
 		return numPieces;
 	}
@@ -48,6 +48,13 @@ public class PrecomputedMoveData {
 	public static final long[] bishopMoves;
 	public static final long[] queenMoves;
 
+	// Every square on the line (rank, file or diagonal) through squares a and b, from edge to edge
+	// So a pinned piece can only move to squares in alignMask[pieceSquare][kingSquare]
+	// 0 if the squares are not on a shared line
+	public static final long[][] alignMask;
+	// Squares strictly between squares a and b if they share a line, otherwise 0
+	public static final long[][] betweenMask;
+
 	// Aka manhattan distance (answers how many moves for a rook to get from square a to square b)
 	public static final int[][] orthogonalDistance;
 	// Aka chebyshev distance (answers how many moves for a king to get from square a to square b)
@@ -208,6 +215,32 @@ public class PrecomputedMoveData {
 			directionLookup[i] = absDir * (int) Math.signum (offset);
 		}
 
+		// Line lookup
+		alignMask = new long[64][64];
+		betweenMask = new long[64][64];
+		for (int squareA = 0; squareA < 64; squareA++) {
+			for (int directionIndex = 0; directionIndex < 8; directionIndex++) {
+				int directionOffset = directionOffsets[directionIndex];
+				// full line through squareA in this direction (both ways)
+				long line = 1L << squareA;
+				for (int n = 0; n < numSquaresToEdge[squareA][directionIndex]; n++) {
+					line |= 1L << (squareA + directionOffset * (n + 1));
+				}
+				int oppositeDirIndex = directionIndex ^ 1;
+				for (int n = 0; n < numSquaresToEdge[squareA][oppositeDirIndex]; n++) {
+					line |= 1L << (squareA - directionOffset * (n + 1));
+				}
+
+				long between = 0;
+				for (int n = 0; n < numSquaresToEdge[squareA][directionIndex]; n++) {
+					int squareB = squareA + directionOffset * (n + 1);
+					alignMask[squareA][squareB] = line;
+					betweenMask[squareA][squareB] = between;
+					between |= 1L << squareB;
+				}
+			}
+		}
+
 		// Distance lookup
 		orthogonalDistance = new int[64][64];
 		kingDistance = new int[64][64];
@@ -1,17 +1,5 @@
 package chess_ai.ai_board;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Random;
-import org.apache.commons.io.IOUtils;
 /**
  * this class was originally written by SebLague in C# and converted to Java by
  * Graham Young
@@ -23,75 +11,36 @@ import org.apache.commons.io.IOUtils;
  *
  */
 public class Zobrist {
-	final static int seed = 2361912;
-	final static String randomNumbersFilePath = "/RandomNumbers.txt";
+	// Fixed seed so the keys are the same in every run
+	final static long seed = 2361912;
 
 	/// piece type, colour, square index
 	public static final long[][][] piecesArray = new long[8][2][64];
 	public static final long[] castlingRights = new long[16];
 	/// ep file (0 = no ep).
-	public static long[] enPassantFile = new long[9]; // no need for rank info as side to move is included in key
-	public static long sideToMove;
+	public static final long[] enPassantFile = new long[9]; // no need for rank info as side to move is included in key
+	public static final long sideToMove;
 
-	static Random prng = new Random(seed);
-
-
-	static void WriteRandomNumbers () throws Exception {
-		prng = new Random(seed);
-		String randomNumberString = "";
-		int numRandomNumbers = 64 * 8 * 2 + castlingRights.length + 9 + 1;
-
-		for (int i = 0; i < numRandomNumbers; i++) {
-			randomNumberString += RandomUnsigned64BitNumber ();
-			if (i != numRandomNumbers - 1) {
-				randomNumberString += ',';
-			}
-		}
-		var writer = new FileWriter(getRandomNumbersPath());
-		writer.write(randomNumberString);
-		writer.close();
-	}
-
-	static Queue<Long> ReadRandomNumbers () throws Exception {
-		File f = new File(getRandomNumbersPath());
-		if (!f.exists()) {
-			//Debug.Log ("Create");
-			WriteRandomNumbers ();
-		}
-		Queue<Long> randomNumbers = new LinkedList<> ();
-
-		var reader = new FileReader(getRandomNumbersPath());
-		String numbersString = IOUtils.toString(reader);
-		reader.close ();
-
-		String[] numberStrings = numbersString.split(",");
-		for (int i = 0; i < numberStrings.length; i++) {
-			long number = Long.parseUnsignedLong(numberStrings[i]);
-			((LinkedList<Long>) randomNumbers).add(number);
-		}
-		return randomNumbers;
-	}
-
-	public Zobrist() throws Exception {
-
-		var randomNumbers = ReadRandomNumbers ();
+	// The key tables are filled when the class is loaded, which always happens before any board calculates a key
+	static {
+		SplitMix64 prng = new SplitMix64(seed);
 
 		for (int squareIndex = 0; squareIndex < 64; squareIndex++) {
 			for (int pieceIndex = 0; pieceIndex < 8; pieceIndex++) {
-				piecesArray[pieceIndex][AIBoard.WhiteIndex][squareIndex] = randomNumbers.poll();
-				piecesArray[pieceIndex][AIBoard.BlackIndex][squareIndex] = randomNumbers.poll();
+				piecesArray[pieceIndex][AIBoard.WhiteIndex][squareIndex] = prng.next();
+				piecesArray[pieceIndex][AIBoard.BlackIndex][squareIndex] = prng.next();
 			}
 		}
 
 		for (int i = 0; i < 16; i++) {
-			castlingRights[i] = randomNumbers.poll();
+			castlingRights[i] = prng.next();
 		}
 
 		for (int i = 0; i < enPassantFile.length; i++) {
-			enPassantFile[i] = randomNumbers.poll ();
+			enPassantFile[i] = prng.next();
 		}
 
-		sideToMove = randomNumbers.poll ();
+		sideToMove = prng.next();
 	}
 
 	/// Calculate zobrist key from current board position. This should only be used after setting board from fen; during search the key should be updated incrementally.
@@ -107,8 +56,9 @@ public class Zobrist {
 			}
 		}
 
+		// file 0 means no en passant square, MakeMove only adds the key of an actual en passant file
 		int epIndex = (int) (board.currentGameState >> 4) & 15;
-		if (epIndex != -1) {
+		if (epIndex != 0) {
 			zobristKey ^= enPassantFile[epIndex];
 		}
 
@@ -121,16 +71,35 @@ public class Zobrist {
 		return zobristKey;
 	}
 
-	static String getRandomNumbersPath() {
-		return randomNumbersFilePath;
+	/// Calculate the zobrist key of the pawns only (used by the pawn hash table). Like CalculateZobristKey this should only be used after setting board from fen.
+	public static long CalculatePawnKey (AIBoard board) {
+		long pawnKey = 0;
+		for (int colourIndex = 0; colourIndex < 2; colourIndex++) {
+			long pawns = board.GetPieceBitboard (Piece.Pawn, colourIndex);
+			while (pawns != 0) {
+				pawnKey ^= piecesArray[Piece.Pawn][colourIndex][BitBoardUtility.LowestSquare (pawns)];
+				pawns &= pawns - 1;
+			}
+		}
+		return pawnKey;
 	}
 
+	/**
+	 * SplitMix64 pseudo random number generator, every output is a full 64 bit number
+	 * (java.util.Random only has 48 bits of state)
+	 */
+	static class SplitMix64 {
+		long state;
 
-	static long RandomUnsigned64BitNumber () throws Exception {
-		byte[] buffer = new byte[8];
-		prng.nextBytes(buffer);
-	
-		return Long.parseUnsignedLong(BitConverter.toUInt64(buffer, 0));
+		SplitMix64(long seed) {
+			state = seed;
+		}
 
+		long next() {
+			long z = (state += 0x9E3779B97F4A7C15L);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
 	}
-}
\ No newline at end of file
+}
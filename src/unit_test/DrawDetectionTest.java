@@ -0,0 +1,100 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import chess_ai.ChessAI;
+import chess_ai.SearchLimits;
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BoardRepresentation;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * checks that the search scores repeated positions and positions after the fifty move rule as draws,
+ * except when the last move mated
+ *
+ * @author Graham Young
+ *
+ */
+public class DrawDetectionTest {
+
+	// white is a queen down
+	static final String NO_WHITE_QUEEN_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNB1KBNR w KQkq - 0 1";
+	// white has a queen against a bare king, no capture or pawn move is possible
+	static final String QUEEN_ENDGAME_FEN = "8/8/8/4k3/8/8/3QK3/8 w - - %d 80";
+	// back rank mate in one with the halfmove clock at 99
+	static final String MATE_IN_ONE_FEN = "6k1/5ppp/8/8/8/8/8/R5K1 w - - 99 80";
+
+	AIBoard board = new AIBoard();
+	ChessAI ai = new ChessAI(true, 16);
+	int lastEval;
+
+	public DrawDetectionTest() {
+		ai.setSearchListener((depth, eval, nodes, time, bestMove, principalVariation) -> lastEval = eval);
+	}
+
+	@Test
+	public void testRepetition() {
+		board.LoadPosition(NO_WHITE_QUEEN_FEN);
+		// a queen down, white would rather repeat the position than play on
+		assertTrue(search(4) < -500);
+
+		board.LoadPosition(NO_WHITE_QUEEN_FEN);
+		playMoves("g1f3", "g8f6", "f3g1", "f6g8", "g1f3", "g8f6");
+		// Ng1 repeats the position after white's second move
+		Move bestMove = ai.getBestMove(board, SearchLimits.depth(4));
+		assertEquals(0, lastEval);
+		assertEquals("f3g1", moveName(bestMove.getValue()));
+	}
+
+	@Test
+	public void testFiftyMoveRule() {
+		board.LoadPosition(String.format(QUEEN_ENDGAME_FEN, 0));
+		assertTrue(search(4) > 500);
+
+		// every move makes it 100 plies without a capture or pawn move
+		board.LoadPosition(String.format(QUEEN_ENDGAME_FEN, 99));
+		assertEquals(0, search(4));
+
+		board.LoadPosition(String.format(QUEEN_ENDGAME_FEN, 100));
+		assertEquals(0, search(4));
+	}
+
+	@Test
+	public void testMateOnHundredthPly() {
+		// Ra8# is the 100th ply without a capture or pawn move, checkmate takes precedence over the draw
+		board.LoadPosition(MATE_IN_ONE_FEN);
+		assertEquals(ChessAI.MATE_SCORE - 1, search(4));
+	}
+
+	private int search(int depth) {
+		ai.newGame();
+		ai.getBestMove(board, SearchLimits.depth(depth));
+		return lastEval;
+	}
+
+	private void playMoves(String... moveNames) {
+		int[] moves = new int[MoveGenerator.MaxMoves];
+		MoveGenerator moveGenerator = new MoveGenerator();
+		for (String moveName : moveNames) {
+			int numMoves = moveGenerator.generateMoves(board, moves);
+			boolean found = false;
+			for (int i = 0; i < numMoves && !found; i++) {
+				if (moveName(moves[i]).equals(moveName)) {
+					board.MakeMove(new Move((short) moves[i]));
+					found = true;
+				}
+			}
+			assertTrue(moveName + " is not legal", found);
+		}
+	}
+
+	private static String moveName(int move) {
+		return BoardRepresentation.SquareNameFromIndex(Move.getStartSquare(move))
+				+ BoardRepresentation.SquareNameFromIndex(Move.getTargetSquare(move));
+	}
+}
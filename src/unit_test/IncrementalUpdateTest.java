@@ -0,0 +1,124 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.MoveGenerator;
+import chess_ai.ai_board.Piece;
+import chess_ai.ai_board.PieceSquareTable;
+import chess_ai.ai_board.Zobrist;
+
+
+/**
+ * plays random games from the perft positions and checks after every move that the values MakeMove and
+ * UnmakeMove update incrementally (zobrist key, pawn key, piece-square scores and game phase) are the same
+ * as when they are calculated from scratch, and that unmaking all the moves restores them
+ *
+ * @author Graham Young
+ *
+ */
+public class IncrementalUpdateTest {
+
+	static final int NUM_GAMES = 50;
+	static final int MAX_PLIES = 80;
+
+	final Random random = new Random(12345);
+	final MoveGenerator moveGenerator = new MoveGenerator();
+	final int[] moves = new int[MoveGenerator.MaxMoves];
+	final int[] playedMoves = new int[MAX_PLIES];
+	AIBoard board;
+
+	@Test
+	public void testStartPos() {
+		playGames(PerftTest.START_POS_FEN);
+	}
+
+	@Test
+	public void testPos2() {
+		playGames(PerftTest.FEN_POS_2);
+	}
+
+	@Test
+	public void testPos3() {
+		playGames(PerftTest.FEN_POS_3);
+	}
+
+	@Test
+	public void testPos4() {
+		playGames(PerftTest.FEN_POS_4);
+	}
+
+	@Test
+	public void testPos5() {
+		playGames(PerftTest.FEN_POS_5);
+	}
+
+	private void playGames(String fen) {
+		for (int game = 0; game < NUM_GAMES; game++) {
+			board = new AIBoard();
+			board.LoadPosition(fen);
+			long zobristKey = board.ZobristKey;
+			long pawnKey = board.PawnKey;
+			int middlegameScore = board.middlegameScore;
+			int endgameScore = board.endgameScore;
+			int gamePhase = board.gamePhase;
+
+			int numPlayed = 0;
+			while (numPlayed < MAX_PLIES) {
+				int numMoves = moveGenerator.generateMoves(board, moves);
+				if (numMoves == 0) {
+					break;
+				}
+				int move = moves[random.nextInt(numMoves)];
+				board.MakeMove(move, true);
+				playedMoves[numPlayed++] = move;
+				checkIncrementalValues();
+
+				// a null move must change the key the same way as calculating it does
+				if (random.nextInt(8) == 0 && !moveGenerator.isInCheck(board)) {
+					board.MakeNullMove();
+					checkIncrementalValues();
+					board.UnmakeNullMove();
+					checkIncrementalValues();
+				}
+			}
+			while (numPlayed > 0) {
+				board.UnmakeMove(playedMoves[--numPlayed], true);
+				checkIncrementalValues();
+			}
+
+			assertEquals(zobristKey, board.ZobristKey);
+			assertEquals(pawnKey, board.PawnKey);
+			assertEquals(middlegameScore, board.middlegameScore);
+			assertEquals(endgameScore, board.endgameScore);
+			assertEquals(gamePhase, board.gamePhase);
+		}
+	}
+
+	private void checkIncrementalValues() {
+		assertEquals("zobrist key", Zobrist.CalculateZobristKey(board), board.ZobristKey);
+		assertEquals("pawn key", Zobrist.CalculatePawnKey(board), board.PawnKey);
+
+		int middlegameScore = 0;
+		int endgameScore = 0;
+		int gamePhase = 0;
+		for (int square = 0; square < 64; square++) {
+			int piece = board.Square[square];
+			if (piece != Piece.None) {
+				int colourIndex = Piece.IsColour(piece, Piece.White) ? AIBoard.WhiteIndex : AIBoard.BlackIndex;
+				int pieceType = Piece.PieceType(piece);
+				middlegameScore += PieceSquareTable.Middlegame[colourIndex * 8 + pieceType][square];
+				endgameScore += PieceSquareTable.Endgame[colourIndex * 8 + pieceType][square];
+				gamePhase += PieceSquareTable.Phase[pieceType];
+			}
+		}
+		assertEquals("middlegame score", middlegameScore, board.middlegameScore);
+		assertEquals("endgame score", endgameScore, board.endgameScore);
+		assertEquals("game phase", gamePhase, board.gamePhase);
+	}
+}
@@ -0,0 +1,99 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import chess_ai.ChessAI;
+import chess_ai.SearchLimits;
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BoardRepresentation;
+import chess_ai.ai_board.Move;
+
+
+/**
+ * checks the mate scores of the search: mates are scored by their distance from the root and the
+ * search stops deepening once a mate is proven
+ *
+ * @author Graham Young
+ *
+ */
+public class MateScoreTest {
+
+	// Ra8#
+	static final String MATE_IN_ONE_FEN = "6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1";
+	// Nf6+ gxf6 Bxf7#
+	static final String MATE_IN_TWO_FEN = "r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1";
+	// black to move gets mated by Ra8 whatever it plays
+	static final String MATED_IN_ONE_FEN = "7k/R7/6K1/8/8/8/8/8 b - - 0 1";
+
+	AIBoard board = new AIBoard();
+	ChessAI ai = new ChessAI(true, 16);
+	int lastEval;
+	int lastDepth;
+
+	public MateScoreTest() {
+		ai.setSearchListener((depth, eval, nodes, time, bestMove, principalVariation) -> {
+			lastEval = eval;
+			lastDepth = depth;
+		});
+	}
+
+	@Test
+	public void testMateInMoves() {
+		assertEquals(1, ChessAI.mateInMoves(ChessAI.MATE_SCORE - 1));
+		assertEquals(2, ChessAI.mateInMoves(ChessAI.MATE_SCORE - 3));
+		assertEquals(-1, ChessAI.mateInMoves(-(ChessAI.MATE_SCORE - 2)));
+		assertEquals(-2, ChessAI.mateInMoves(-(ChessAI.MATE_SCORE - 4)));
+		assertTrue(ChessAI.isMateScore(ChessAI.MATE_SCORE - 5));
+		assertTrue(ChessAI.isMateScore(-(ChessAI.MATE_SCORE - 5)));
+		assertFalse(ChessAI.isMateScore(900));
+	}
+
+	@Test
+	public void testMateInOne() {
+		board.LoadPosition(MATE_IN_ONE_FEN);
+		Move bestMove = ai.getBestMove(board, SearchLimits.depth(6));
+		assertEquals("a1a8", moveName(bestMove));
+		assertEquals(ChessAI.MATE_SCORE - 1, lastEval);
+		assertEquals(1, ChessAI.mateInMoves(lastEval));
+	}
+
+	@Test
+	public void testMateInTwo() {
+		board.LoadPosition(MATE_IN_TWO_FEN);
+		Move bestMove = ai.getBestMove(board, SearchLimits.depth(6));
+		assertEquals("d5f6", moveName(bestMove));
+		assertEquals(2, ChessAI.mateInMoves(lastEval));
+	}
+
+	@Test
+	public void testMatedInOne() {
+		board.LoadPosition(MATED_IN_ONE_FEN);
+		ai.getBestMove(board, SearchLimits.depth(6));
+		assertEquals(-(ChessAI.MATE_SCORE - 2), lastEval);
+		assertEquals(-1, ChessAI.mateInMoves(lastEval));
+	}
+
+	@Test
+	public void testStopsOnceMateIsProven() {
+		// the mate in one is proven by the depth 1 iteration (the capture search after Ra8 sees that black, in check,
+		// has no evasions), deeper iterations can't find anything better
+		board.LoadPosition(MATE_IN_ONE_FEN);
+		ai.getBestMove(board, SearchLimits.depth(30));
+		assertEquals(1, lastDepth);
+
+		// an infinite search carries on until it is stopped
+		SearchLimits limits = new SearchLimits();
+		limits.infinite = true;
+		ai.newGame();
+		ai.getBestMove(board, limits);
+		assertEquals(SearchLimits.MAX_DEPTH, lastDepth);
+	}
+
+	private static String moveName(Move move) {
+		return BoardRepresentation.SquareNameFromIndex(move.getStartSquare())
+				+ BoardRepresentation.SquareNameFromIndex(move.getTargetSquare());
+	}
+}
@@ -0,0 +1,171 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import chess_ai.MovePicker;
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * walks the trees of the perft positions and checks at every node that the MovePicker hands out each legal
+ * move exactly once, with hash moves, killer moves and countermoves seeded from the position itself
+ * (so they are legal) and from other positions (so they usually aren't)
+ *
+ * @author Graham Young
+ *
+ */
+public class MovePickerTest {
+
+	static final int DEPTH = 3;
+
+	final int[][] killerMoves = new int[DEPTH + 1][2];
+	final int[][][] history = new int[2][64][64];
+	final int[][] counterMoves = new int[64][64];
+	final MovePicker[] movePickers = new MovePicker[DEPTH + 1];
+	final int[][] moveBuffers = new int[DEPTH + 1][MoveGenerator.MaxMoves];
+	final MoveGenerator moveGenerator = new MoveGenerator();
+	final int[] captures = new int[MoveGenerator.MaxMoves];
+
+	// moves seen in earlier positions, used as hash and killer moves that are mostly illegal
+	final int[] seenMoves = new int[4096];
+	int numSeenMoves;
+	int numNodes;
+
+	AIBoard board;
+
+	public MovePickerTest() {
+		for (int i = 0; i < movePickers.length; i++) {
+			movePickers[i] = new MovePicker(killerMoves, history, counterMoves);
+		}
+	}
+
+	@Test
+	public void testStartPos() {
+		walkTree(PerftTest.START_POS_FEN);
+	}
+
+	@Test
+	public void testPos2() {
+		walkTree(PerftTest.FEN_POS_2);
+	}
+
+	@Test
+	public void testPos3() {
+		walkTree(PerftTest.FEN_POS_3);
+	}
+
+	@Test
+	public void testPos4() {
+		walkTree(PerftTest.FEN_POS_4);
+	}
+
+	@Test
+	public void testPos5() {
+		walkTree(PerftTest.FEN_POS_5);
+	}
+
+	@Test
+	public void testPos6() {
+		walkTree(PerftTest.FEN_POS_6);
+	}
+
+	private void walkTree(String fen) {
+		board = new AIBoard();
+		board.LoadPosition(fen);
+		walk(DEPTH, 0, Move.InvalidMoveValue);
+	}
+
+	private void walk(int depth, int plyFromRoot, int previousMove) {
+		int[] moves = moveBuffers[plyFromRoot];
+		int numMoves = moveGenerator.generateMoves(board, moves);
+
+		// a legal and a probably illegal move for every slot, alternating between nodes
+		boolean legalFirst = (numNodes++ & 1) == 0;
+		int hashMove = pickMove(moves, numMoves, legalFirst, 0);
+		killerMoves[plyFromRoot][0] = pickMove(moves, numMoves, !legalFirst, 1);
+		killerMoves[plyFromRoot][1] = pickMove(moves, numMoves, legalFirst, 2);
+		if (previousMove != Move.InvalidMoveValue) {
+			counterMoves[Move.getStartSquare(previousMove)][Move.getTargetSquare(previousMove)] = pickMove(moves, numMoves, !legalFirst, 3);
+		}
+
+		checkAllMoves(movePickers[plyFromRoot], hashMove, plyFromRoot, previousMove, moves, numMoves);
+		checkCaptures(movePickers[plyFromRoot], hashMove, plyFromRoot, previousMove);
+
+		for (int i = 0; i < numMoves && numSeenMoves < seenMoves.length; i++) {
+			seenMoves[numSeenMoves++] = moves[i];
+		}
+		if (depth == 0) {
+			return;
+		}
+		for (int i = 0; i < numMoves; i++) {
+			board.MakeMove(moves[i], true);
+			walk(depth - 1, plyFromRoot + 1, moves[i]);
+			board.UnmakeMove(moves[i], true);
+		}
+	}
+
+	private int pickMove(int[] moves, int numMoves, boolean legal, int offset) {
+		if (legal && numMoves > 0) {
+			return moves[(numNodes + offset) % numMoves];
+		}
+		if (numSeenMoves > 0) {
+			return seenMoves[(numNodes * 7 + offset) % numSeenMoves];
+		}
+		return Move.InvalidMoveValue;
+	}
+
+	/**
+	 * the picker must hand out every legal move once, starting with the hash move if it is legal
+	 */
+	private void checkAllMoves(MovePicker movePicker, int hashMove, int plyFromRoot, int previousMove, int[] moves, int numMoves) {
+		Set<Integer> legalMoves = new HashSet<Integer>();
+		for (int i = 0; i < numMoves; i++) {
+			legalMoves.add(moves[i]);
+		}
+
+		movePicker.init(board, hashMove, plyFromRoot, previousMove, true);
+		Set<Integer> pickedMoves = new HashSet<Integer>();
+		for (int move = movePicker.nextMove(); move != Move.InvalidMoveValue; move = movePicker.nextMove()) {
+			if (pickedMoves.isEmpty() && legalMoves.contains(hashMove)) {
+				assertEquals(hashMove, move);
+			}
+			assertTrue("picked twice: " + new Move((short) move), pickedMoves.add(move));
+		}
+		assertEquals(legalMoves, pickedMoves);
+	}
+
+	/**
+	 * in the capture search the picker hands out every capture that doesn't lose material once and ignores the hash move,
+	 * in check it hands out every capture
+	 */
+	private void checkCaptures(MovePicker movePicker, int hashMove, int plyFromRoot, int previousMove) {
+		int numCaptures = moveGenerator.generateMoves(board, captures, false);
+		Set<Integer> legalCaptures = new HashSet<Integer>();
+		for (int i = 0; i < numCaptures; i++) {
+			legalCaptures.add(captures[i]);
+		}
+
+		movePicker.init(board, hashMove, plyFromRoot, previousMove, false);
+		Set<Integer> pickedMoves = new HashSet<Integer>();
+		for (int move = movePicker.nextMove(); move != Move.InvalidMoveValue; move = movePicker.nextMove()) {
+			assertTrue("not a capture: " + new Move((short) move), legalCaptures.contains(move));
+			assertTrue("picked twice: " + new Move((short) move), pickedMoves.add(move));
+		}
+		if (moveGenerator.isInCheck(board)) {
+			assertEquals(legalCaptures, pickedMoves);
+		}
+		for (int capture : legalCaptures) {
+			if (!pickedMoves.contains(capture)) {
+				assertTrue("capture left out: " + new Move((short) capture), board.StaticExchangeEvaluation(capture) < 0);
+			}
+		}
+	}
+}
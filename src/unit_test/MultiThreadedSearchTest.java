@@ -0,0 +1,120 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import chess_ai.ChessAI;
+import chess_ai.SearchLimits;
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BoardRepresentation;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * checks that the search gives the same kind of answers with one thread and with helper threads:
+ * a legal move, the winning move of a known tactic, and helper threads that are idle between searches
+ * and end when they are no longer needed
+ * 
+ * @author Graham Young
+ *
+ */
+public class MultiThreadedSearchTest {
+	
+	static final String KIWIPETE_FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q2/PPPBBPPP/R3K2R w KQkq - 0 1";
+	// Nf6+ gxf6 Bxf7#
+	static final String MATE_IN_TWO_FEN = "r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1";
+	static final String HELPER_THREAD_NAME = "ChessAI helper";
+	
+	int lastEval;
+	
+	@Test
+	public void testSingleThread() {
+		searchPositions(1);
+	}
+	
+	@Test
+	public void testMultipleThreads() {
+		searchPositions(Math.max(2, Runtime.getRuntime().availableProcessors()));
+	}
+	
+	@Test
+	public void testHelperThreadsStop() throws InterruptedException {
+		Set<Thread> threadsBefore = helperThreads();
+		ChessAI ai = createAI(4);
+		AIBoard board = new AIBoard();
+		board.LoadPosition(KIWIPETE_FEN);
+		ai.getBestMove(board, SearchLimits.depth(6));
+		
+		// the helpers stop with the main search, so the node count doesn't change after it returns
+		long nodes = ai.getNodesSearched();
+		Thread.sleep(50);
+		assertEquals(nodes, ai.getNodesSearched());
+		assertEquals(3, newHelperThreads(threadsBefore).size());
+		
+		ai.setThreads(1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!newHelperThreads(threadsBefore).isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(newHelperThreads(threadsBefore).isEmpty());
+	}
+	
+	private void searchPositions(int threads) {
+		ChessAI ai = createAI(threads);
+		try {
+			AIBoard board = new AIBoard();
+			board.LoadStartPosition();
+			assertTrue(isLegal(board, ai.getBestMove(board, SearchLimits.depth(5))));
+			
+			board.LoadPosition(KIWIPETE_FEN);
+			assertTrue(isLegal(board, ai.getBestMove(board, SearchLimits.depth(5))));
+			
+			board.LoadPosition(MATE_IN_TWO_FEN);
+			Move bestMove = ai.getBestMove(board, SearchLimits.depth(5));
+			assertEquals("d5f6", BoardRepresentation.SquareNameFromIndex(bestMove.getStartSquare())
+					+ BoardRepresentation.SquareNameFromIndex(bestMove.getTargetSquare()));
+			assertEquals(2, ChessAI.mateInMoves(lastEval));
+		} finally {
+			ai.setThreads(1);
+		}
+	}
+	
+	private ChessAI createAI(int threads) {
+		ChessAI ai = new ChessAI(true, 16, threads);
+		ai.setSearchListener((depth, eval, nodes, time, bestMove, principalVariation) -> lastEval = eval);
+		return ai;
+	}
+	
+	private boolean isLegal(AIBoard board, Move move) {
+		int[] moves = new int[MoveGenerator.MaxMoves];
+		int numMoves = new MoveGenerator().generateMoves(board, moves);
+		for (int i = 0; i < numMoves; i++) {
+			if (moves[i] == move.getValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private Set<Thread> helperThreads() {
+		Set<Thread> threads = new HashSet<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(HELPER_THREAD_NAME) && thread.isAlive()) {
+				threads.add(thread);
+			}
+		}
+		return threads;
+	}
+	
+	private Set<Thread> newHelperThreads(Set<Thread> threadsBefore) {
+		Set<Thread> threads = helperThreads();
+		threads.removeAll(threadsBefore);
+		return threads;
+	}
+}
@@ -1,6 +1,8 @@
 package unit_test;
 
 
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import chessboard.ChessBoard;
@@ -14,6 +16,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 
 import chess_ai.ChessAI;
+import chess_ai.Perft;
 import chess_ai.ai_board.AIBoard;
 import chess_ai.ai_board.Move;
 import chess_ai.ai_board.MoveGenerator;
@@ -39,134 +42,185 @@ public class PerftTest {
 	public static final String FEN_POS_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
 	
 	
-	MoveGenerator mg;
+	// parallel hashed perft, shared by all the tests so there is only one table and thread pool
+	static Perft perft;
+	MoveGenerator mg = new MoveGenerator();
 	AIBoard board;
+	// one move buffer per remaining depth so the search doesn't allocate
+	int[][] moveBuffers = new int[16][MoveGenerator.MaxMoves];
+
+	@BeforeClass
+	public static void createPerft() {
+		perft = new Perft(Runtime.getRuntime().availableProcessors(), 64);
+	}
+
+	@AfterClass
+	public static void shutdownPerft() {
+		perft.shutdown();
+	}
 
 	@Test
 	public void perftTestStartPos() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadStartPosition();
 
-		assertEquals(20, search(1, true));
-		assertEquals(400, search(2, true));
-		assertEquals(8902, search(3, true));
-		assertEquals(197281, search(4, true));
-		assertEquals(4865609, search(5, true));
-		assertEquals(119060324, search(6, true));
-		assertEquals(3195901860L, search(7, true));
+		check(20, 1);
+		check(400, 2);
+		check(8902, 3);
+		check(197281, 4);
+		check(4865609, 5);
+		check(119060324, 6);
+		check(3195901860L, 7);
 	}
 	
 	
 	@Test
 	public void perftTestPos2() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadPosition(FEN_POS_2);
 
-		assertEquals(48, search(1, true));
-		assertEquals(2039, search(2, true));
-		assertEquals(97862, search(3, true));
-		assertEquals(4085603, search(4, true));
-		assertEquals(193690690, search(5, true));
-		assertEquals(8031647685L, search(6,true));
+		check(48, 1);
+		check(2039, 2);
+		check(97862, 3);
+		check(4085603, 4);
+		check(193690690, 5);
+		check(8031647685L, 6);
 	}
 	
 	@Test
 	public void perftTestPos3() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadPosition(FEN_POS_3);
 
-		assertEquals(14, search(1, true));
-		assertEquals(191, search(2, true));
-		assertEquals(2812, search(3, true));
-		assertEquals(43238, search(4, true));
-		assertEquals(674624, search(5, true));
-		assertEquals(11030083, search(6,true));
-		assertEquals(178633661, search(7,true));
-		assertEquals(3009794393L, search(8,true));
+		check(14, 1);
+		check(191, 2);
+		check(2812, 3);
+		check(43238, 4);
+		check(674624, 5);
+		check(11030083, 6);
+		check(178633661, 7);
+		check(3009794393L, 8);
 	}
 	
 	@Test
 	public void perftTestPos4() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadPosition(FEN_POS_4);
 
-		assertEquals(6, search(1, true));
-		assertEquals(264, search(2, true));
-		assertEquals(9467, search(3, true));
-		assertEquals(422333, search(4, true));
-		assertEquals(15833292, search(5, true));
-		assertEquals(706045033, search(6,true));
+		check(6, 1);
+		check(264, 2);
+		check(9467, 3);
+		check(422333, 4);
+		check(15833292, 5);
+		check(706045033, 6);
 
 	}
 	
 	@Test
 	public void perftTestPos5() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadPosition(FEN_POS_5);
 
-		assertEquals(44, search(1, true));
-		assertEquals(1486, search(2, true));
-		assertEquals(62379, search(3, true));
-		assertEquals(2103487, search(4, true));
-		assertEquals(89941194, search(5, true));
+		check(44, 1);
+		check(1486, 2);
+		check(62379, 3);
+		check(2103487, 4);
+		check(89941194, 5);
 
 	}
 	
 	@Test
 	public void perftTestPos6() {
-		mg = new MoveGenerator();
 		board = new AIBoard();
 		board.LoadPosition(FEN_POS_6);
 
-		assertEquals(46, search(1, true));
-		assertEquals(2079, search(2, true));
-		assertEquals(89890, search(3, true));
-		assertEquals(3894594, search(4, true));
-		assertEquals(164075551, search(5, true));
+		check(46, 1);
+		check(2079, 2);
+		check(89890, 3);
+		check(3894594, 4);
+		check(164075551, 5);
 
 	}
 	
 	
-	public long search(int depth, boolean root) {
-		
+	/**
+	 * counts a few shallow trees through the List API of the move generator, without Perft's hashing,
+	 * threads or bulk counting
+	 */
+	@Test
+	public void perftTestMoveList() {
+		board = new AIBoard();
+		board.LoadStartPosition();
+		assertEquals(8902, listSearch(3));
+
+		board.LoadPosition(FEN_POS_2);
+		assertEquals(97862, listSearch(3));
+
+		board.LoadPosition(FEN_POS_4);
+		assertEquals(9467, listSearch(3));
+
+		board.LoadPosition(FEN_POS_5);
+		assertEquals(1486, listSearch(2));
+	}
+
+	/**
+	 * counts the nodes by playing every move generated by MoveGenerator.generateMoves(AIBoard)
+	 */
+	public long listSearch(int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		long numNodes = 0;
+		List<Move> moves = mg.generateMoves(board);
+		for (Move m : moves) {
+			board.MakeMove(m, true);
+			numNodes += listSearch(depth - 1);
+			board.UnmakeMove(m, true);
+		}
+		return numNodes;
+	}
 
+	/**
+	 * checks the node count of the move generator on its own, then that the parallel hashed Perft
+	 * (which shares its table between positions and depths) counts the same
+	 */
+	private void check(long expected, int depth) {
+		assertEquals(expected, search(depth, true));
+		long hashedNodes = perft.perft(board, depth);
+		System.out.println("hashed: " + hashedNodes + " nodes " + perft.getNodesPerSecond() + " nps "
+				+ String.format("%.1f", perft.getTable().hitRate()) + "% hash hits");
+		assertEquals(expected, hashedNodes);
+	}
+
+	/**
+	 * counts the nodes on a single thread without hashing, printing the count of every root move when root is true.
+	 * The last ply is counted from the number of generated moves instead of playing them.
+	 */
+	public long search(int depth, boolean root) {
 		boolean leaf = (depth == 2);
 		long numLocalNodes = 0;
 		long numSuccessors = 0;
-		List<Move> moves = mg.generateMoves(board);
-		for(Move m : moves) {
+		int[] moves = moveBuffers[depth];
+		int numMoves = mg.generateMoves(board, moves);
+		for(int i = 0; i < numMoves; i++) {
 			if (root && depth <= 1) {
-	            numSuccessors = 1; 
+				numSuccessors = 1;
 				numLocalNodes++;
 			}
-	        else {
-				board.MakeMove(m, true);
-				
-				numSuccessors =  leaf ? mg.generateMoves(board).size() : search(depth-1, false);
-				
+			else {
+				board.MakeMove(moves[i], true);
+				numSuccessors = leaf ? mg.generateMoves(board, moveBuffers[depth - 1]) : search(depth-1, false);
 				numLocalNodes += numSuccessors;
-	
-				board.UnmakeMove(m, true);
-	        }
+				board.UnmakeMove(moves[i], true);
+			}
 			if (root) {
-				System.out.println(m + ": " + numSuccessors);
+				System.out.println(new Move((short) moves[i]) + ": " + numSuccessors);
 			}
-			
 		}
 		if(root) {
 			System.out.println(numLocalNodes);
 		}
-		
-		
-		
-		
 		return numLocalNodes;
-		
 	}
 
 	
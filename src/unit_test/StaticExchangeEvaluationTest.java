@@ -0,0 +1,88 @@
+package unit_test;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import chess_ai.ai_board.AIBoard;
+import chess_ai.ai_board.BoardRepresentation;
+import chess_ai.ai_board.Move;
+import chess_ai.ai_board.MoveGenerator;
+
+
+/**
+ * checks AIBoard.StaticExchangeEvaluation on hand-worked exchanges (pawn 100, knight and bishop 300, rook 500, queen 900)
+ *
+ * @author Graham Young
+ *
+ */
+public class StaticExchangeEvaluationTest {
+
+	AIBoard board = new AIBoard();
+
+	@Test
+	public void testUndefendedPiece() {
+		assertEquals(300, see("4k3/8/8/3n4/8/8/8/3RK3 w - - 0 1", "d1d5"));
+	}
+
+	@Test
+	public void testPawnTakesDefendedKnight() {
+		assertEquals(200, see("4k3/8/2p5/3n4/4P3/8/8/4K3 w - - 0 1", "e4d5"));
+	}
+
+	@Test
+	public void testQueenTakesDefendedPawn() {
+		assertEquals(-800, see("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1", "d1d5"));
+	}
+
+	@Test
+	public void testRookXRay() {
+		// Rxd6 Rxd6 Rxd6, the rook on d1 only attacks d6 once the rook on d2 has left
+		assertEquals(100, see("3rk3/8/3p4/8/8/8/3R4/3RK3 w - - 0 1", "d2d6"));
+		// without the rook behind it the capture loses the rook for a pawn
+		assertEquals(-400, see("3rk3/8/3p4/8/8/8/3R4/4K3 w - - 0 1", "d2d6"));
+	}
+
+	@Test
+	public void testQueenXRay() {
+		// Rxd6 Rxd6 Qxd6 with the queen behind the rook
+		assertEquals(100, see("3rk3/8/3p4/8/8/8/3R4/3QK3 w - - 0 1", "d2d6"));
+		// the black queen behind the black rook makes the second white capture lose a rook,
+		// so white stops after Rxd6 Rxd6
+		assertEquals(-400, see("3qk3/3r4/3p4/8/8/8/3R4/3RK3 w - - 0 1", "d2d6"));
+	}
+
+	@Test
+	public void testEnPassant() {
+		assertEquals(100, see("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6"));
+		// recaptured by the pawn on c7
+		assertEquals(0, see("4k3/2p5/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6"));
+	}
+
+	@Test
+	public void testKingRecapture() {
+		// the king recaptures an undefended rook
+		assertEquals(-400, see("4k3/3p4/8/8/8/8/8/3RK3 w - - 0 1", "d1d7"));
+		// the bishop on b5 defends d7, so the king can't recapture
+		assertEquals(100, see("4k3/3p4/8/1B6/8/8/8/3RK3 w - - 0 1", "d1d7"));
+	}
+
+	/**
+	 * @param moveName move in long algebraic notation, it must be legal in the position
+	 */
+	private int see(String fen, String moveName) {
+		board.LoadPosition(fen);
+		int[] moves = new int[MoveGenerator.MaxMoves];
+		int numMoves = new MoveGenerator().generateMoves(board, moves);
+		for (int i = 0; i < numMoves; i++) {
+			String name = BoardRepresentation.SquareNameFromIndex(Move.getStartSquare(moves[i]))
+					+ BoardRepresentation.SquareNameFromIndex(Move.getTargetSquare(moves[i]));
+			if (name.equals(moveName)) {
+				return board.StaticExchangeEvaluation(moves[i]);
+			}
+		}
+		fail(moveName + " is not legal in " + fen);
+		return 0;
+	}
+}